@@ -0,0 +1,181 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.google.gson.Gson;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.tylerlubeck.maraudersmapmultiuser.Activities.MainActivity;
+import com.tylerlubeck.maraudersmapmultiuser.BuildConfig;
+import com.tylerlubeck.maraudersmapmultiuser.Models.LocateMeBody;
+import com.tylerlubeck.maraudersmapmultiuser.R;
+import com.tylerlubeck.maraudersmapmultiuser.Tasks.RequestExecutor;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.RestAdapter;
+import retrofit.android.AndroidLog;
+import retrofit.android.MainThreadExecutor;
+import retrofit.client.OkClient;
+import retrofit.converter.GsonConverter;
+
+/**
+ * The one RestAdapter the whole app talks to the server through.
+ *
+ * Every service shares the same OkHttpClient, so connections to the server are pooled and
+ * kept alive between requests instead of paying for a new handshake every time. Calls run on
+ * the RequestExecutor's pool at HIGH priority, ahead of any bulk uploads. Large request
+ * bodies are gzipped while the server accepts them; OkHttp itself asks for and unzips
+ * compressed responses. Responses are kept in a bounded disk cache and revalidated with ETag
+ * and Last-Modified.
+ * The credentials are read by the request interceptor on every request, so they can be
+ * changed without rebuilding anything.
+ */
+public class ApiClient {
+    final static int MAX_IDLE_CONNECTIONS = 4;
+    final static long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+    final static long CONNECT_TIMEOUT_MS = 10 * 1000;
+    final static long READ_TIMEOUT_MS = 20 * 1000;
+    /* Locate attempts are retried, so each one gives up much sooner than the deadline */
+    final static long LOCATE_READ_TIMEOUT_MS = 5 * 1000;
+    final static String HTTP_CACHE_DIRECTORY = "http";
+    final static long HTTP_CACHE_BYTES = 4 * 1024 * 1024;
+    /* Whether to send fingerprints with the CompactFingerprintCodec; see PrefsFragment */
+    public final static String COMPACT_ENCODING_PREFERENCE = "compact_encoding";
+
+    private static ApiClient instance;
+
+    private final OkHttpClient httpClient;
+    private final RestAdapter restAdapter;
+    private final RestAdapter locateAdapter;
+    private final RequestInterceptors.AuthorizedHeaderIntercepter credentials;
+    private final CompactConverter converter;
+
+    private final PositioningService positioningService;
+    private final PositioningService locateService;
+    private final FloorInterface floorService;
+    private final AccessPointService accessPointService;
+    private final FloorRepository floorRepository;
+
+    private ApiClient(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this.credentials = new RequestInterceptors.AuthorizedHeaderIntercepter(
+                preferences.getString("facebook_username", ""),
+                preferences.getString("api_key", ""));
+
+        this.httpClient = new OkHttpClient();
+        this.httpClient.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS));
+        this.httpClient.setConnectTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        this.httpClient.setReadTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        this.httpClient.setCache(new Cache(new File(context.getCacheDir(), HTTP_CACHE_DIRECTORY), HTTP_CACHE_BYTES));
+        this.httpClient.interceptors().add(new GzipRequestInterceptor());
+        this.httpClient.interceptors().add(new MetricsInterceptor());
+        this.httpClient.networkInterceptors().add(new FloorCacheInterceptor());
+
+        this.converter = new CompactConverter(new GsonConverter(new Gson()));
+        this.converter.setEnabled(preferences.getBoolean(COMPACT_ENCODING_PREFERENCE, false));
+
+        this.restAdapter = this.buildAdapter(context, this.httpClient);
+
+        OkHttpClient locateClient = this.httpClient.clone();
+        locateClient.setReadTimeout(LOCATE_READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        this.locateAdapter = this.buildAdapter(context, locateClient);
+
+        this.positioningService = this.restAdapter.create(PositioningService.class);
+        this.locateService = this.locateAdapter.create(PositioningService.class);
+        this.floorService = this.restAdapter.create(FloorInterface.class);
+        this.accessPointService = this.restAdapter.create(AccessPointService.class);
+        this.floorRepository = new FloorRepository(this.floorService);
+    }
+
+    private RestAdapter buildAdapter(Context context, OkHttpClient client) {
+        return new RestAdapter.Builder()
+                .setEndpoint(context.getString(R.string.root_server))
+                .setClient(new NegotiatingClient(new OkClient(client), this.converter))
+                .setConverter(this.converter)
+                /* Every Retrofit call is something the user is waiting on */
+                .setExecutors(RequestExecutor.forPriority(RequestExecutor.Priority.HIGH), new MainThreadExecutor())
+                .setLogLevel(BuildConfig.DEBUG ? RestAdapter.LogLevel.BASIC : RestAdapter.LogLevel.NONE)
+                .setLog(new AndroidLog(MainActivity.LOG_TAG))
+                .setRequestInterceptor(this.credentials)
+                .build();
+    }
+
+    /**
+     * @param context   Any context; only the application context is held on to
+     * @return the process-wide client, creating it on first use
+     */
+    public static synchronized ApiClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new ApiClient(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Use new credentials for every request from now on
+     * @param username  The user's facebook username
+     * @param apiKey    The user's API key
+     */
+    public void setCredentials(String username, String apiKey) {
+        this.credentials.setCredentials(username, apiKey);
+    }
+
+    /**
+     * Change how much of each request and response gets logged
+     * @param logLevel  The new log level
+     */
+    public void setLogLevel(RestAdapter.LogLevel logLevel) {
+        this.restAdapter.setLogLevel(logLevel);
+        this.locateAdapter.setLogLevel(logLevel);
+    }
+
+    /**
+     * Send locate requests and responses with the CompactFingerprintCodec instead of JSON.
+     *      Follows the compact encoding preference. If the server turns out not to accept it,
+     *      requests go back to JSON by themselves until the preference is changed again.
+     * @param enabled   Whether to send fingerprints compactly
+     */
+    public void setCompactEncoding(boolean enabled) {
+        this.converter.setEnabled(enabled);
+    }
+
+    /**
+     * @return the HTTP client shared by every service
+     */
+    public OkHttpClient getHttpClient() {
+        return this.httpClient;
+    }
+
+    public PositioningService getPositioningService() {
+        return this.positioningService;
+    }
+
+    /**
+     * @param fingerprint   The access points to locate
+     * @return a request that locates the fingerprint with short per-attempt timeouts, ready to
+     *              be configured and started
+     */
+    public LocateRequest newLocateRequest(LocateMeBody fingerprint) {
+        return new LocateRequest(this.locateService, fingerprint);
+    }
+
+    public FloorInterface getFloorService() {
+        return this.floorService;
+    }
+
+    public AccessPointService getAccessPointService() {
+        return this.accessPointService;
+    }
+
+    /**
+     * @return floors, served from the cache first and then refreshed
+     */
+    public FloorRepository getFloorRepository() {
+        return this.floorRepository;
+    }
+}
@@ -0,0 +1,93 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import com.tylerlubeck.maraudersmapmultiuser.Models.LocateMeBody;
+import com.tylerlubeck.maraudersmapmultiuser.Models.RespondToRequestBody;
+
+import java.lang.reflect.Type;
+
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Sends locate requests, and responses that share a location, with the CompactFingerprintCodec
+ * when it is enabled, and hands everything else to the usual JSON converter.
+ *
+ * The encoding is only used while the server accepts it. NegotiatingClient turns it off the
+ * first time the server answers a compact request with 415 Unsupported Media Type, and sends
+ * the CompactBody's original object again as JSON.
+ */
+public class CompactConverter implements Converter {
+    private final Converter jsonConverter;
+    private volatile boolean enabled;
+
+    /**
+     * A compactly encoded body, which keeps the object it was encoded from so that the same
+     * request can be sent again as JSON
+     */
+    public static class CompactBody extends TypedByteArray {
+        private final Object source;
+
+        CompactBody(String mimeType, byte[] bytes, Object _source) {
+            super(mimeType, bytes);
+            this.source = _source;
+        }
+
+        /**
+         * @return the object the body was encoded from
+         */
+        public Object getSource() {
+            return this.source;
+        }
+    }
+
+    /**
+     * @param _jsonConverter    The converter for everything that isn't sent compactly
+     */
+    public CompactConverter(Converter _jsonConverter) {
+        this.jsonConverter = _jsonConverter;
+    }
+
+    /**
+     * @param _enabled  Whether to send locate requests and responses compactly
+     */
+    public void setEnabled(boolean _enabled) {
+        this.enabled = _enabled;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @return the converter for everything that isn't sent compactly
+     */
+    public Converter getJsonConverter() {
+        return this.jsonConverter;
+    }
+
+    @Override
+    public Object fromBody(TypedInput body, Type type) throws ConversionException {
+        return this.jsonConverter.fromBody(body, type);
+    }
+
+    @Override
+    public TypedOutput toBody(Object object) {
+        if (this.enabled && object instanceof LocateMeBody) {
+            LocateMeBody body = (LocateMeBody) object;
+            byte[] bytes = CompactFingerprintCodec.encode(body.getAccessPoints(), System.currentTimeMillis());
+            return new CompactBody(CompactFingerprintCodec.MIME_TYPE, bytes, object);
+        }
+        /* A denied request carries no access points, and is already small as JSON */
+        if (this.enabled && object instanceof RespondToRequestBody
+                && ((RespondToRequestBody) object).getAccessPoints() != null) {
+            RespondToRequestBody body = (RespondToRequestBody) object;
+            byte[] bytes = CompactFingerprintCodec.encodeResponse(body.isAllowRequest(), body.getRequestorId(),
+                                                                  body.getAccessPoints(), System.currentTimeMillis());
+            return new CompactBody(CompactFingerprintCodec.RESPONSE_MIME_TYPE, bytes, object);
+        }
+        return this.jsonConverter.toBody(object);
+    }
+}
@@ -0,0 +1,211 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import com.tylerlubeck.maraudersmapmultiuser.MacAddresses;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A compact binary encoding of a fingerprint, about a tenth the size of the JSON.
+ *
+ * Layout:
+ * <pre>
+ *     byte     VERSION
+ *     varint   timestamp shared by every access point, in milliseconds since the epoch
+ *     varint   access point count
+ *     access point[], sorted by BSSID:
+ *         varint   BSSID, as the difference from the previous access point's BSSID
+ *         byte     -mean RSS, in dBm
+ *         byte     standard deviation, in units of STD_DEV_QUANTUM dBm
+ * </pre>
+ * Varints are unsigned LEB128: seven bits per byte, least significant first, with the top bit
+ * set on every byte but the last. Sorting makes the BSSID deltas small, so access points from
+ * the same vendor usually cost two or three bytes instead of a 17 character string.
+ *
+ * Access points whose MAC address couldn't be parsed are left out.
+ *
+ * A response to a location request is sent as RESPONSE_MIME_TYPE:
+ * <pre>
+ *     byte     VERSION
+ *     byte     1 if the request is allowed, 0 if not
+ *     varint   requestor id
+ *     the fingerprint, as above, from its timestamp on
+ * </pre>
+ */
+public class CompactFingerprintCodec {
+    public final static String MIME_TYPE = "application/x-maraudersmap-fingerprint";
+    public final static String RESPONSE_MIME_TYPE = "application/x-maraudersmap-response";
+    final static byte VERSION = 1;
+    final static double STD_DEV_QUANTUM = 0.25;
+
+    private static final Comparator<AccessPoint> BY_BSSID = new Comparator<AccessPoint>() {
+        @Override
+        public int compare(AccessPoint a, AccessPoint b) {
+            return a.getBssid() < b.getBssid() ? -1 : (a.getBssid() == b.getBssid() ? 0 : 1);
+        }
+    };
+
+    private CompactFingerprintCodec() {}
+
+    /**
+     * A fingerprint read back out of its encoding
+     */
+    public static class Decoded {
+        public final long timestamp;
+        public final List<AccessPoint> accessPoints;
+
+        Decoded(long _timestamp, List<AccessPoint> _accessPoints) {
+            this.timestamp = _timestamp;
+            this.accessPoints = _accessPoints;
+        }
+    }
+
+    /**
+     * A response to a location request read back out of its encoding
+     */
+    public static class DecodedResponse {
+        public final boolean allow_request;
+        public final int requestor_id;
+        public final Decoded fingerprint;
+
+        DecodedResponse(boolean _allow_request, int _requestor_id, Decoded _fingerprint) {
+            this.allow_request = _allow_request;
+            this.requestor_id = _requestor_id;
+            this.fingerprint = _fingerprint;
+        }
+    }
+
+    /**
+     * @param accessPoints  The access points to encode
+     * @param timestamp     When the access points were seen, in milliseconds since the epoch
+     * @return the encoded fingerprint
+     */
+    public static byte[] encode(List<AccessPoint> accessPoints, long timestamp) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4 + accessPoints.size() * 5);
+        out.write(VERSION);
+        writeFingerprint(out, accessPoints, timestamp);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param allow_request     Whether the request is allowed
+     * @param requestor_id      The id of the user who asked
+     * @param accessPoints      The access points to encode
+     * @param timestamp         When the access points were seen, in milliseconds since the epoch
+     * @return the encoded response
+     */
+    public static byte[] encodeResponse(boolean allow_request, int requestor_id,
+                                        List<AccessPoint> accessPoints, long timestamp) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + accessPoints.size() * 5);
+        out.write(VERSION);
+        out.write(allow_request ? 1 : 0);
+        writeVarint(out, requestor_id & 0xFFFFFFFFL);
+        writeFingerprint(out, accessPoints, timestamp);
+        return out.toByteArray();
+    }
+
+    private static void writeFingerprint(ByteArrayOutputStream out, List<AccessPoint> accessPoints, long timestamp) {
+        ArrayList<AccessPoint> sorted = new ArrayList<AccessPoint>(accessPoints.size());
+        for (AccessPoint accessPoint : accessPoints) {
+            if (accessPoint.getBssid() != MacAddresses.INVALID) {
+                sorted.add(accessPoint);
+            }
+        }
+        Collections.sort(sorted, BY_BSSID);
+        int count = sorted.size();
+
+        writeVarint(out, timestamp);
+        writeVarint(out, count);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            AccessPoint accessPoint = sorted.get(i);
+            writeVarint(out, accessPoint.getBssid() - previous);
+            previous = accessPoint.getBssid();
+            out.write(clamp((int) Math.round(-accessPoint.getSignalStrength())));
+            out.write(clamp((int) Math.round(accessPoint.getStandardDeviation() / STD_DEV_QUANTUM)));
+        }
+    }
+
+    /**
+     * Decode a fingerprint, the way the server does
+     * @param bytes     The encoded fingerprint
+     * @return the timestamp and the access points, with no location
+     * @throws IOException  If the bytes are not an encoded fingerprint
+     */
+    public static Decoded decode(byte[] bytes) throws IOException {
+        int[] position = new int[] {0};
+        if (bytes.length == 0 || bytes[position[0]++] != VERSION) {
+            throw new IOException("Not a compact fingerprint");
+        }
+        return readFingerprint(bytes, position);
+    }
+
+    /**
+     * Decode a response to a location request, the way the server does
+     * @param bytes     The encoded response
+     * @return whether the request was allowed, who asked, and the fingerprint
+     * @throws IOException  If the bytes are not an encoded response
+     */
+    public static DecodedResponse decodeResponse(byte[] bytes) throws IOException {
+        int[] position = new int[] {0};
+        if (bytes.length < 2 || bytes[position[0]++] != VERSION) {
+            throw new IOException("Not a compact response");
+        }
+        boolean allow_request = bytes[position[0]++] != 0;
+        int requestor_id = (int) readVarint(bytes, position);
+        return new DecodedResponse(allow_request, requestor_id, readFingerprint(bytes, position));
+    }
+
+    private static Decoded readFingerprint(byte[] bytes, int[] position) throws IOException {
+        long timestamp = readVarint(bytes, position);
+        long count = readVarint(bytes, position);
+        if (count < 0 || count > bytes.length) {
+            throw new IOException("Corrupt compact fingerprint");
+        }
+
+        ArrayList<AccessPoint> accessPoints = new ArrayList<AccessPoint>((int) count);
+        long bssid = 0;
+        for (int i = 0; i < count; i++) {
+            bssid += readVarint(bytes, position);
+            if (position[0] + 2 > bytes.length) {
+                throw new IOException("Truncated compact fingerprint");
+            }
+            double signal_strength = -(bytes[position[0]++] & 0xFF);
+            double standard_deviation = (bytes[position[0]++] & 0xFF) * STD_DEV_QUANTUM;
+            accessPoints.add(new AccessPoint(bssid, signal_strength, standard_deviation, null));
+        }
+        return new Decoded(timestamp, accessPoints);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] bytes, int[] position) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IOException("Truncated compact fingerprint");
+            }
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt compact fingerprint");
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
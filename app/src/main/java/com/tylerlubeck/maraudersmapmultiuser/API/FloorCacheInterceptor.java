@@ -0,0 +1,36 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Makes floor responses cacheable when the server doesn't say how long to keep them.
+ *
+ * Floor metadata almost never changes. Any ETag or Last-Modified header the server sends is
+ * left alone, so that stale entries can be revalidated with a conditional request instead of
+ * being downloaded again.
+ */
+public class FloorCacheInterceptor implements Interceptor {
+    final static String FLOOR_PATH = "/api/v1/floor/";
+    final static int FLOOR_MAX_AGE_SECONDS = 60 * 60;
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        if (! request.method().equals("GET")
+                || ! request.url().getPath().startsWith(FLOOR_PATH)
+                || ! response.isSuccessful()
+                || response.header("Cache-Control") != null
+                || response.header("Expires") != null) {
+            return response;
+        }
+        return response.newBuilder()
+                .removeHeader("Pragma")
+                .header("Cache-Control", "private, max-age=" + FLOOR_MAX_AGE_SECONDS)
+                .build();
+    }
+}
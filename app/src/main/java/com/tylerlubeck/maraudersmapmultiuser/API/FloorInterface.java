@@ -6,6 +6,7 @@ import java.util.List;
 
 import retrofit.Callback;
 import retrofit.http.GET;
+import retrofit.http.Header;
 import retrofit.http.Path;
 
 /**
@@ -18,4 +19,11 @@ public interface FloorInterface {
     @GET("/api/v1/floor/{id}")
     void getFloorById(@Path("id") int id, Callback<Floor> callback);
 
+    /* The same requests, with a Cache-Control header to choose between the cache and the server */
+    @GET("/api/v1/floor/")
+    void getFloors(@Header("Cache-Control") String cacheControl, Callback<List<Floor>> callback);
+
+    @GET("/api/v1/floor/{id}")
+    void getFloorById(@Path("id") int id, @Header("Cache-Control") String cacheControl, Callback<Floor> callback);
+
 }
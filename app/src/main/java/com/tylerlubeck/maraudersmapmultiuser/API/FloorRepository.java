@@ -0,0 +1,109 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import com.tylerlubeck.maraudersmapmultiuser.Models.Floor;
+
+import java.util.List;
+
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+
+/**
+ * Loads floors stale-while-revalidate: whatever is in the HTTP cache is handed over straight
+ * away, however old, and then the server is asked whether it has changed. An unchanged floor
+ * list costs a 304 with no body.
+ */
+public class FloorRepository {
+    /* Serve anything we have without touching the network */
+    final static String CACHED_ONLY = "only-if-cached, max-stale=" + (30 * 24 * 60 * 60);
+    /* Always check with the server, which answers 304 if the cached copy is still current */
+    final static String REVALIDATE = "no-cache";
+
+    /**
+     * Told about each version of the data as it arrives, on the main thread
+     * @param <T>   The type of the data
+     */
+    public interface Listener<T> {
+        /**
+         * Called with the cached copy, if there is one, then again with the server's copy
+         * @param data          The data
+         * @param from_cache    True if the data came from the cache and may be out of date
+         */
+        void onLoaded(T data, boolean from_cache);
+
+        /**
+         * Called if the server couldn't be reached and nothing was cached
+         * @param error     What went wrong with the network request
+         */
+        void onFailed(RetrofitError error);
+    }
+
+    private final FloorInterface floorService;
+
+    public FloorRepository(FloorInterface _floorService) {
+        this.floorService = _floorService;
+    }
+
+    /**
+     * @param listener  Told about the cached floors, then the up to date ones
+     */
+    public void getFloors(final Listener<List<Floor>> listener) {
+        this.floorService.getFloors(CACHED_ONLY, new Callback<List<Floor>>() {
+            @Override
+            public void success(List<Floor> floors, Response response) {
+                listener.onLoaded(floors, true);
+                FloorRepository.this.floorService.getFloors(REVALIDATE, new Revalidation<List<Floor>>(listener, true));
+            }
+
+            @Override
+            public void failure(RetrofitError error) {
+                FloorRepository.this.floorService.getFloors(REVALIDATE, new Revalidation<List<Floor>>(listener, false));
+            }
+        });
+    }
+
+    /**
+     * @param id        The id of the floor
+     * @param listener  Told about the cached floor, then the up to date one
+     */
+    public void getFloorById(final int id, final Listener<Floor> listener) {
+        this.floorService.getFloorById(id, CACHED_ONLY, new Callback<Floor>() {
+            @Override
+            public void success(Floor floor, Response response) {
+                listener.onLoaded(floor, true);
+                FloorRepository.this.floorService.getFloorById(id, REVALIDATE, new Revalidation<Floor>(listener, true));
+            }
+
+            @Override
+            public void failure(RetrofitError error) {
+                FloorRepository.this.floorService.getFloorById(id, REVALIDATE, new Revalidation<Floor>(listener, false));
+            }
+        });
+    }
+
+    /**
+     * Hands the server's answer to the listener. A failure is only reported if the listener
+     * has nothing to show; otherwise the cached copy stands.
+     */
+    private static class Revalidation<T> implements Callback<T> {
+        private final Listener<T> listener;
+        private final boolean served_from_cache;
+
+        Revalidation(Listener<T> _listener, boolean _served_from_cache) {
+            this.listener = _listener;
+            this.served_from_cache = _served_from_cache;
+        }
+
+        @Override
+        public void success(T data, Response response) {
+            this.listener.onLoaded(data, false);
+        }
+
+        @Override
+        public void failure(RetrofitError error) {
+            if (! this.served_from_cache) {
+                this.listener.onFailed(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.tylerlubeck.maraudersmapmultiuser.Tasks.HttpCompression;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Gzips request bodies of at least HttpCompression.MIN_COMPRESS_BYTES, for as long as the server
+ * takes them.
+ *
+ * A gzipped request answered with 400 or 415 is sent again uncompressed, and HttpCompression
+ * remembers whether that helped. OkHttp already asks for gzipped responses and decompresses
+ * them, so only the requests need handling here.
+ */
+public class GzipRequestInterceptor implements Interceptor {
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        if (body == null
+                || request.header("Content-Encoding") != null
+                || body.contentLength() < HttpCompression.MIN_COMPRESS_BYTES
+                || ! HttpCompression.isCompressingRequests()) {
+            return chain.proceed(request);
+        }
+
+        Buffer compressed = new Buffer();
+        BufferedSink gzip = Okio.buffer(new GzipSink(compressed));
+        body.writeTo(gzip);
+        gzip.close();
+
+        MediaType contentType = body.contentType();
+        Request compressedRequest = request.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), RequestBody.create(contentType, compressed.readByteString()))
+                .build();
+        Response response = chain.proceed(compressedRequest);
+        if (! HttpCompression.isRejection(response.code())) {
+            return response;
+        }
+
+        response.body().close();
+        NetworkMetrics.getInstance().recordRetry(request.method(), request.urlString());
+        Response retry = chain.proceed(request);
+        HttpCompression.rememberUncompressedResult(retry.code());
+        return retry;
+    }
+}
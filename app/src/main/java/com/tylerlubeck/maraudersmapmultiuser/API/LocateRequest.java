@@ -0,0 +1,261 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.tylerlubeck.maraudersmapmultiuser.Activities.MainActivity;
+import com.tylerlubeck.maraudersmapmultiuser.Models.LocateMeBody;
+import com.tylerlubeck.maraudersmapmultiuser.Models.MyLocation;
+import com.tylerlubeck.maraudersmapmultiuser.Tasks.RequestExecutor;
+
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.UUID;
+
+import retrofit.RetrofitError;
+
+/**
+ * Asks the server where a fingerprint is, within a deadline.
+ *
+ * A failed attempt is sent again, after a randomly jittered, exponentially growing backoff.
+ * If hedging is turned on and an attempt hasn't been answered after the hedge delay, a second
+ * copy is sent alongside it and whichever answers first wins. Every attempt sends the same
+ * fingerprint; nothing is rescanned.
+ *
+ * The server may store the location it works out, and an attempt that timed out here may still
+ * have reached it. So every attempt of one request carries the same REQUEST_ID_HEADER, which
+ * the server can use to handle the copies only once.
+ *
+ * Must be started and cancelled from the main thread, which the Listener is also called on.
+ */
+public class LocateRequest {
+    public final static long DEFAULT_DEADLINE_MS = 15 * 1000;
+    public final static int DEFAULT_MAX_ATTEMPTS = 3;
+    final static long BASE_BACKOFF_MS = 250;
+    final static long MAX_BACKOFF_MS = 4 * 1000;
+    final static String LOCATE_PATH = "/api/v1/user_location/me/";
+    public final static String REQUEST_ID_HEADER = "X-Request-Id";
+
+    public interface Listener {
+        /**
+         * @param location  Where the server thinks the fingerprint was taken
+         */
+        void onLocated(MyLocation location);
+
+        /**
+         * Called once the deadline has passed, every attempt has been used up, or the server
+         *      has rejected the fingerprint outright
+         * @param error     What went wrong with the last attempt
+         */
+        void onFailed(RetrofitError error);
+    }
+
+    private final PositioningService service;
+    private final LocateMeBody fingerprint;
+    private final Handler handler;
+    private final Random random;
+    /* Shared by every attempt, so the server can tell they are copies */
+    private final String request_id;
+
+    private long deadline_ms = DEFAULT_DEADLINE_MS;
+    private int max_attempts = DEFAULT_MAX_ATTEMPTS;
+    private long hedge_delay_ms = 0;
+
+    private Listener listener;
+    private int attempts_started;
+    private int attempts_in_flight;
+    private boolean finished;
+    private RetrofitError last_error;
+
+    /**
+     * @param _service      The service to send attempts through, which should time out each
+     *                          attempt well within the deadline
+     * @param _fingerprint  The access points to locate
+     */
+    public LocateRequest(PositioningService _service, LocateMeBody _fingerprint) {
+        this.service = _service;
+        this.fingerprint = _fingerprint;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.random = new Random();
+        this.request_id = UUID.randomUUID().toString();
+    }
+
+    /**
+     * @param _deadline_ms  How long to keep trying for, in milliseconds
+     */
+    public void setDeadline(long _deadline_ms) {
+        this.deadline_ms = _deadline_ms;
+    }
+
+    /**
+     * @param _max_attempts How many attempts to send at most, hedges included
+     */
+    public void setMaxAttempts(int _max_attempts) {
+        this.max_attempts = _max_attempts;
+    }
+
+    /**
+     * @param _hedge_delay_ms   How long to wait on an attempt before sending another copy
+     *                              alongside it, in milliseconds, or 0 to never hedge
+     */
+    public void setHedgeDelay(long _hedge_delay_ms) {
+        this.hedge_delay_ms = _hedge_delay_ms;
+    }
+
+    /**
+     * @return the fingerprint being located, to try again with later
+     */
+    public LocateMeBody getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Send the first attempt
+     * @param _listener     Told about the outcome, exactly once unless cancelled
+     */
+    public void start(Listener _listener) {
+        this.listener = _listener;
+        this.handler.postDelayed(this.onDeadline, this.deadline_ms);
+        this.sendAttempt();
+    }
+
+    /**
+     * Stop trying. Attempts already sent still finish, but their answers are ignored and the
+     *      Listener is never called.
+     */
+    public void cancel() {
+        this.finished = true;
+        this.handler.removeCallbacksAndMessages(null);
+    }
+
+    private void sendAttempt() {
+        if (this.attempts_in_flight > 0) {
+            NetworkMetrics.getInstance().recordHedge("POST", LOCATE_PATH);
+        } else if (this.attempts_started > 0) {
+            NetworkMetrics.getInstance().recordRetry("POST", LOCATE_PATH);
+        }
+        this.attempts_started++;
+        this.attempts_in_flight++;
+        final int attempt = this.attempts_started;
+        RequestExecutor.forPriority(RequestExecutor.Priority.HIGH).execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final MyLocation location = LocateRequest.this.service.locateMe(LocateRequest.this.request_id,
+                                                                                        LocateRequest.this.fingerprint);
+                    LocateRequest.this.handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onAttemptSucceeded(location);
+                        }
+                    });
+                } catch (final RetrofitError error) {
+                    LocateRequest.this.handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onAttemptFailed(attempt, error);
+                        }
+                    });
+                }
+            }
+        });
+
+        if (this.hedge_delay_ms > 0 && this.attempts_started < this.max_attempts) {
+            this.handler.removeCallbacks(this.onHedge);
+            this.handler.postDelayed(this.onHedge, this.hedge_delay_ms);
+        }
+    }
+
+    private void onAttemptSucceeded(MyLocation location) {
+        this.attempts_in_flight--;
+        if (this.finished) {
+            return;
+        }
+        this.cancel();
+        this.listener.onLocated(location);
+    }
+
+    private void onAttemptFailed(int attempt, RetrofitError error) {
+        this.attempts_in_flight--;
+        if (this.finished) {
+            return;
+        }
+        Log.d(MainActivity.LOG_TAG, String.format("Locate attempt %d failed: %s", attempt, error.getMessage()));
+        this.last_error = error;
+
+        if (! isRetryable(error)) {
+            this.fail();
+            return;
+        }
+        /* A hedge is still out there; give it the chance to answer */
+        if (this.attempts_in_flight > 0) {
+            return;
+        }
+        if (this.attempts_started >= this.max_attempts) {
+            this.fail();
+            return;
+        }
+
+        this.handler.removeCallbacks(this.onHedge);
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(this.attempts_started - 1, 16));
+        long backoff = (long) (this.random.nextDouble() * ceiling);
+        this.handler.postDelayed(this.onRetry, backoff);
+    }
+
+    private void fail() {
+        this.cancel();
+        RetrofitError error = this.last_error;
+        if (error == null) {
+            error = RetrofitError.networkError(LOCATE_PATH,
+                    new SocketTimeoutException(String.format("No answer within %d ms", this.deadline_ms)));
+        }
+        this.listener.onFailed(error);
+    }
+
+    /**
+     * Network failures and server errors are worth another go; anything else would fail again
+     */
+    static boolean isRetryable(RetrofitError error) {
+        switch (error.getKind()) {
+            case NETWORK:
+                return true;
+            case HTTP:
+                int status = error.getResponse().getStatus();
+                return status >= 500 || status == 408 || status == 429;
+            default:
+                return false;
+        }
+    }
+
+    private final Runnable onRetry = new Runnable() {
+        @Override
+        public void run() {
+            if (! LocateRequest.this.finished) {
+                sendAttempt();
+            }
+        }
+    };
+
+    private final Runnable onHedge = new Runnable() {
+        @Override
+        public void run() {
+            if (! LocateRequest.this.finished
+                    && LocateRequest.this.attempts_in_flight > 0
+                    && LocateRequest.this.attempts_started < LocateRequest.this.max_attempts) {
+                Log.d(MainActivity.LOG_TAG, "Locate is slow, hedging with another attempt");
+                sendAttempt();
+            }
+        }
+    };
+
+    private final Runnable onDeadline = new Runnable() {
+        @Override
+        public void run() {
+            if (! LocateRequest.this.finished) {
+                fail();
+            }
+        }
+    };
+}
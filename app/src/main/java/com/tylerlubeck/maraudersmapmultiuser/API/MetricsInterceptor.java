@@ -0,0 +1,52 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Records every Retrofit call in NetworkMetrics.
+ *
+ * This sits outside the cache and just inside the GzipRequestInterceptor, so latency is what
+ * the caller waited and byte counts are what actually went over the wire. Responses served
+ * from the cache count as zero bytes received.
+ */
+public class MetricsInterceptor implements Interceptor {
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        long request_bytes = request.body() == null ? 0 : request.body().contentLength();
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            NetworkMetrics.getInstance().record(request.method(), request.urlString(),
+                                                elapsedMillis(start), request_bytes, -1,
+                                                NetworkMetrics.NO_RESPONSE);
+            throw e;
+        }
+
+        /* The network response still has the Content-Length from before decompression */
+        Response network = response.networkResponse();
+        long response_bytes = 0;
+        if (network != null) {
+            String length = network.header("Content-Length");
+            try {
+                response_bytes = length == null ? -1 : Long.parseLong(length);
+            } catch (NumberFormatException e) {
+                response_bytes = -1;
+            }
+        }
+        NetworkMetrics.getInstance().record(request.method(), request.urlString(),
+                                            elapsedMillis(start), request_bytes, response_bytes,
+                                            response.code());
+        return response;
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
@@ -0,0 +1,55 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import android.util.Log;
+
+import com.tylerlubeck.maraudersmapmultiuser.Activities.MainActivity;
+
+import java.io.IOException;
+
+import retrofit.client.Client;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Falls back to JSON when the server doesn't understand the compact encoding.
+ *
+ * If a compactly encoded request is answered with 415 Unsupported Media Type, the compact
+ * encoding is turned off for the rest of the process and the object the request was encoded
+ * from is sent again as JSON, so nothing is lost to the compact encoding's rounding.
+ */
+public class NegotiatingClient implements Client {
+    final static int UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private final Client client;
+    private final CompactConverter converter;
+
+    /**
+     * @param _client       The client that actually sends the requests
+     * @param _converter    The converter whose compact encoding to turn off on a 415
+     */
+    public NegotiatingClient(Client _client, CompactConverter _converter) {
+        this.client = _client;
+        this.converter = _converter;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        Response response = this.client.execute(request);
+        TypedOutput body = request.getBody();
+        if (response.getStatus() != UNSUPPORTED_MEDIA_TYPE || ! (body instanceof CompactConverter.CompactBody)) {
+            return response;
+        }
+
+        Log.d(MainActivity.LOG_TAG, "Server doesn't accept compact bodies, falling back to JSON");
+        this.converter.setEnabled(false);
+        NetworkMetrics.getInstance().recordRetry(request.getMethod(), request.getUrl());
+        if (response.getBody() != null) {
+            response.getBody().in().close();
+        }
+
+        Object source = ((CompactConverter.CompactBody) body).getSource();
+        TypedOutput json = this.converter.getJsonConverter().toBody(source);
+        return this.client.execute(new Request(request.getMethod(), request.getUrl(), request.getHeaders(), json));
+    }
+}
@@ -0,0 +1,246 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency, payload size, status code and retry counts for every endpoint the app calls,
+ * from both the Retrofit services and the request tasks.
+ *
+ * Everything is kept in memory, in fixed-size histograms, until it is dumped.
+ * Endpoints are keyed by method and path, with numeric path segments collapsed,
+ * so /api/v1/floor/3/ and /api/v1/floor/4/ are counted together.
+ */
+public class NetworkMetrics {
+    /* Upper bounds of the latency buckets, in milliseconds; the last bucket is everything slower */
+    final static long[] LATENCY_BOUNDS_MS = {25, 50, 100, 200, 400, 800, 1600, 3200, 6400, 12800};
+    /* Recorded as the status of requests that never got a response */
+    public final static int NO_RESPONSE = 0;
+
+    private static final NetworkMetrics instance = new NetworkMetrics();
+
+    private final HashMap<String, EndpointMetrics> endpoints;
+
+    private NetworkMetrics() {
+        this.endpoints = new HashMap<String, EndpointMetrics>();
+    }
+
+    public static NetworkMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Record one request
+     * @param method            The HTTP method
+     * @param url               The URL or path requested
+     * @param latency_ms        How long the response took, in milliseconds
+     * @param request_bytes     The size of the request body, or -1 if unknown
+     * @param response_bytes    The size of the response body, or -1 if unknown
+     * @param status            The response's status code, or NO_RESPONSE
+     */
+    public synchronized void record(String method, String url, long latency_ms,
+                                    long request_bytes, long response_bytes, int status) {
+        this.getEndpoint(method, url).record(latency_ms, request_bytes, response_bytes, status);
+    }
+
+    /**
+     * Record that a request had to be sent again
+     * @param method    The HTTP method
+     * @param url       The URL or path requested
+     */
+    public synchronized void recordRetry(String method, String url) {
+        this.getEndpoint(method, url).retries++;
+    }
+
+    /**
+     * Record that a slow request was hedged with a second copy
+     * @param method    The HTTP method
+     * @param url       The URL or path requested
+     */
+    public synchronized void recordHedge(String method, String url) {
+        this.getEndpoint(method, url).hedges++;
+    }
+
+    /**
+     * Forget everything recorded so far
+     */
+    public synchronized void reset() {
+        this.endpoints.clear();
+    }
+
+    /**
+     * Write a report of every endpoint, slowest total time first
+     * @param writer    Where to write the report
+     */
+    public synchronized void writeTo(Writer writer) {
+        ArrayList<Map.Entry<String, EndpointMetrics>> sorted =
+                new ArrayList<Map.Entry<String, EndpointMetrics>>(this.endpoints.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, EndpointMetrics>>() {
+            @Override
+            public int compare(Map.Entry<String, EndpointMetrics> a, Map.Entry<String, EndpointMetrics> b) {
+                long difference = b.getValue().total_latency_ms - a.getValue().total_latency_ms;
+                return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+            }
+        });
+
+        PrintWriter out = new PrintWriter(writer);
+        for (Map.Entry<String, EndpointMetrics> entry : sorted) {
+            out.println(entry.getKey());
+            entry.getValue().writeTo(out);
+            out.println();
+        }
+        out.flush();
+    }
+
+    /**
+     * Write the report to a file, replacing whatever was there
+     * @param file  The file to write
+     * @throws IOException  If the file can't be written
+     */
+    public void dump(File file) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            this.writeTo(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private EndpointMetrics getEndpoint(String method, String url) {
+        String key = method + " " + normalize(url);
+        EndpointMetrics metrics = this.endpoints.get(key);
+        if (metrics == null) {
+            metrics = new EndpointMetrics();
+            this.endpoints.put(key, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Drop the scheme, host and query, and collapse numeric path segments
+     * @param url   A URL or path
+     * @return the endpoint's path
+     */
+    static String normalize(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : url.indexOf('/', start + 3);
+        if (start < 0) {
+            return "/";
+        }
+        int end = url.indexOf('?', start);
+        end = end < 0 ? url.length() : end;
+
+        StringBuilder path = new StringBuilder(end - start);
+        int segment = start;
+        while (segment < end) {
+            int next = url.indexOf('/', segment + 1);
+            next = (next < 0 || next > end) ? end : next;
+            /* Segments run from a slash up to, but not including, the next one */
+            if (isNumber(url, segment + 1, next)) {
+                path.append("/{id}");
+            } else {
+                path.append(url, segment, next);
+            }
+            segment = next;
+        }
+        return path.toString();
+    }
+
+    private static boolean isNumber(String string, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (! Character.isDigit(string.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * What has been recorded for a single endpoint
+     */
+    private static class EndpointMetrics {
+        final int[] latency_buckets = new int[LATENCY_BOUNDS_MS.length + 1];
+        final TreeMap<Integer, Integer> statuses = new TreeMap<Integer, Integer>();
+        int count;
+        long total_latency_ms;
+        long max_latency_ms;
+        long request_bytes;
+        long response_bytes;
+        int retries;
+        int hedges;
+
+        void record(long latency_ms, long request_size, long response_size, int status) {
+            int bucket = 0;
+            while (bucket < LATENCY_BOUNDS_MS.length && latency_ms > LATENCY_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            this.latency_buckets[bucket]++;
+            this.count++;
+            this.total_latency_ms += latency_ms;
+            this.max_latency_ms = Math.max(this.max_latency_ms, latency_ms);
+            this.request_bytes += Math.max(request_size, 0);
+            this.response_bytes += Math.max(response_size, 0);
+            Integer seen = this.statuses.get(status);
+            this.statuses.put(status, seen == null ? 1 : seen + 1);
+        }
+
+        /**
+         * @param fraction  Which percentile, between 0 and 1
+         * @return the upper bound of the bucket the percentile falls in, or -1 if it is
+         *              slower than every bound
+         */
+        long percentile(double fraction) {
+            int rank = (int) Math.ceil(fraction * this.count);
+            int seen = 0;
+            for (int bucket = 0; bucket < LATENCY_BOUNDS_MS.length; bucket++) {
+                seen += this.latency_buckets[bucket];
+                if (seen >= rank) {
+                    return LATENCY_BOUNDS_MS[bucket];
+                }
+            }
+            return -1;
+        }
+
+        void writeTo(PrintWriter out) {
+            out.printf("  requests: %d, retries: %d, hedges: %d%n", this.count, this.retries, this.hedges);
+            if (this.count == 0) {
+                return;
+            }
+            out.printf("  latency: mean %d ms, p50 %s, p90 %s, p99 %s, max %d ms%n",
+                       this.total_latency_ms / this.count,
+                       formatBound(this.percentile(0.5)),
+                       formatBound(this.percentile(0.9)),
+                       formatBound(this.percentile(0.99)),
+                       this.max_latency_ms);
+            out.printf("  bytes: %d sent, %d received%n", this.request_bytes, this.response_bytes);
+            out.print("  statuses:");
+            for (Map.Entry<Integer, Integer> status : this.statuses.entrySet()) {
+                out.printf(" %s=%d", status.getKey() == NO_RESPONSE ? "none" : status.getKey().toString(),
+                           status.getValue());
+            }
+            out.println();
+            out.print("  histogram:");
+            for (int bucket = 0; bucket < this.latency_buckets.length; bucket++) {
+                out.printf(" %s=%d", formatBound(bucket < LATENCY_BOUNDS_MS.length ? LATENCY_BOUNDS_MS[bucket] : -1),
+                           this.latency_buckets[bucket]);
+            }
+            out.println();
+        }
+
+        private static String formatBound(long bound_ms) {
+            return bound_ms < 0 ? ">" + LATENCY_BOUNDS_MS[LATENCY_BOUNDS_MS.length - 1] + "ms" : "<=" + bound_ms + "ms";
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.tylerlubeck.maraudersmapmultiuser.Models.RespondToRequestBody;
 
 import retrofit.Callback;
 import retrofit.http.Body;
+import retrofit.http.Header;
 import retrofit.http.POST;
 
 /**
@@ -22,4 +23,11 @@ public interface PositioningService {
     @POST("/api/v1/user_location/me/")
     void locateMe(@Body LocateMeBody body, Callback<MyLocation> callback);
 
+    /*
+     * Blocks the calling thread; used by LocateRequest, which does its own scheduling.
+     * Every copy of one LocateRequest sends the same request id, so the server can drop duplicates.
+     */
+    @POST("/api/v1/user_location/me/")
+    MyLocation locateMe(@Header(LocateRequest.REQUEST_ID_HEADER) String request_id, @Body LocateMeBody body);
+
 }
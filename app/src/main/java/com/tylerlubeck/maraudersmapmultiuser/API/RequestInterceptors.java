@@ -8,18 +8,24 @@ import retrofit.RequestInterceptor;
 public class RequestInterceptors {
     public static class AuthorizedHeaderIntercepter implements RequestInterceptor {
 
-        private String username;
-        private String apiKey;
+        private volatile String authorization;
         public AuthorizedHeaderIntercepter(String username, String apiKey) {
-            this.username = username;
-            this.apiKey = apiKey;
+            this.setCredentials(username, apiKey);
+        }
+
+        /**
+         * Use new credentials for every request intercepted from now on
+         * @param username  The user's facebook username
+         * @param apiKey    The user's API key
+         */
+        public void setCredentials(String username, String apiKey) {
+            this.authorization = String.format("ApiKey %s:%s", username, apiKey);
         }
 
         @Override
         public void intercept(RequestFacade request) {
-            String authorization = String.format("ApiKey %s:%s", username, apiKey);
             request.addHeader("Accept", "application/json");
-            request.addHeader("Content-Type", "application/json");
+            /* The Content-Type comes from the body, which isn't always JSON */
             request.addHeader("Authorization", authorization);
         }
     }
@@ -0,0 +1,116 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+
+import java.util.ArrayList;
+
+/**
+ * Aggregates signal strength readings from many scans in to running statistics per BSSID,
+ * and averages them in to AccessPoints once scanning is done.
+ *
+ * This is the part of AccessPointManager that doesn't depend on Android, so that it can be
+ * benchmarked on its own.
+ */
+public class AccessPointAggregator {
+    private final BssidTable<SignalStatistics> statistics;
+
+    public AccessPointAggregator() {
+        this.statistics = new BssidTable<SignalStatistics>();
+    }
+
+    /**
+     * Fold a reading in to the statistics for its access point
+     * @param bssid     The packed BSSID of the access point
+     * @param strength  The RSS reading, in dBm
+     */
+    public void add(long bssid, int strength) {
+        SignalStatistics access_point = this.statistics.get(bssid);
+        if (access_point == null) {
+            access_point = new SignalStatistics();
+            this.statistics.put(bssid, access_point);
+        }
+        access_point.add(strength);
+    }
+
+    /**
+     * @return the number of distinct access points seen
+     */
+    public int size() {
+        return this.statistics.size();
+    }
+
+    /**
+     * Check whether the standard error of the mean of each of the strongest access points has
+     *      dropped below a threshold.
+     *      Access points seen in only one poll are too flaky to judge, so they are skipped.
+     * @param num_access_points     How many of the strongest access points to check
+     * @param max_standard_error    The largest acceptable standard error, in dBm
+     * @return true if the strongest access points have converged
+     */
+    public boolean hasConverged(int num_access_points, double max_standard_error) {
+        double[] strongest_means = new double[num_access_points];
+        double[] strongest_errors = new double[num_access_points];
+        int num_strongest = 0;
+
+        for (int slot = 0; slot < this.statistics.capacity(); slot++) {
+            if (! this.statistics.isOccupied(slot)) {
+                continue;
+            }
+            SignalStatistics access_point = this.statistics.valueAt(slot);
+            if (access_point.getCount() < 2) {
+                continue;
+            }
+
+            /* Insertion sort in to the list of strongest access points seen so far */
+            double mean = access_point.getMean();
+            int position = num_strongest;
+            while (position > 0 && strongest_means[position - 1] < mean) {
+                position--;
+            }
+            if (position >= num_access_points) {
+                continue;
+            }
+            int last = Math.min(num_strongest, num_access_points - 1);
+            for (int i = last; i > position; i--) {
+                strongest_means[i] = strongest_means[i - 1];
+                strongest_errors[i] = strongest_errors[i - 1];
+            }
+            strongest_means[position] = mean;
+            strongest_errors[position] = access_point.getStandardDeviation()
+                                            / Math.sqrt(access_point.getCount());
+            num_strongest = Math.min(num_strongest + 1, num_access_points);
+        }
+
+        if (num_strongest == 0) {
+            return false;
+        }
+        for (int i = 0; i < num_strongest; i++) {
+            if (strongest_errors[i] > max_standard_error) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Average the statistics of every access point seen
+     * @param location_uri  The location uri to associate the AccessPoints with
+     * @return the averaged AccessPoints
+     */
+    public ArrayList<AccessPoint> getAccessPoints(String location_uri) {
+        ArrayList<AccessPoint> accessPoints = new ArrayList<AccessPoint>(this.statistics.size());
+
+        for (int slot = 0; slot < this.statistics.capacity(); slot++) {
+            if (! this.statistics.isOccupied(slot)) {
+                continue;
+            }
+            SignalStatistics access_point = this.statistics.valueAt(slot);
+            accessPoints.add(new AccessPoint(this.statistics.keyAt(slot),
+                                             access_point.getMean(),
+                                             access_point.getStandardDeviation(),
+                                             access_point.getCount(),
+                                             location_uri));
+        }
+        return accessPoints;
+    }
+}
@@ -6,20 +6,16 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
 
 import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
 import com.tylerlubeck.maraudersmapmultiuser.Models.FloorMapImage;
-import com.tylerlubeck.maraudersmapmultiuser.Tasks.PostAccessPointsTask;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Created by brettfischler on 10/11/14.
@@ -33,20 +29,47 @@ public abstract class AccessPointManager {
         UPLOAD,
         QUERY
     }
+
+    /**
+     * FIXED always performs the maximum number of polls.
+     * ADAPTIVE stops as soon as the strongest access points have stable averages.
+     */
+    public enum PollingMode {
+        FIXED,
+        ADAPTIVE
+    }
+
     final static int NUM_MAPPING_POLLS = 10;
     final static int NUM_QUERY_POLLS = 2;
+    final static int MIN_ADAPTIVE_MAPPING_POLLS = 3;
+    final static int MAX_ADAPTIVE_QUERY_POLLS = 5;
+
+    /* Adaptive polling stops once the mean of each of the strongest access points is known to
+     * within CONVERGENCE_STANDARD_ERROR dBm */
+    final static int CONVERGENCE_ACCESS_POINTS = 5;
+    final static double CONVERGENCE_STANDARD_ERROR = 1.0;
+
+    /* Give up waiting for new readings after this many scans in a row return nothing new,
+     * even if nothing at all has been seen, so that the scan always finishes */
+    final static int MAX_STALE_SCANS = 3;
 
     private int num_times_called;
+    private int num_stale_scans;
+    private ScanFreshnessFilter freshnessFilter;
+    private int min_polls;
     private int num_polls;
+    private PollingMode pollingMode;
     private final UploadType uploadType;
     private String username;
     private String password;
     private String location_uri;
     private Context context;
-    private HashMap<String, ArrayList<Integer>> MAC_Aggregator;
+    private AccessPointAggregator MAC_Aggregator;
     private FloorMapImage floor_image;
     private WifiManager wifiManager;
     private BroadcastReceiver broadcastReceiver;
+    private boolean listening;
+    private boolean cancelled;
 
     /**
      * Create an AccessPointManager that allows for uploading the access points to the related location
@@ -58,11 +81,12 @@ public abstract class AccessPointManager {
      */
     public AccessPointManager(Context _context, FloorMapImage _floor_image, String _location_uri,
                        String username, String password) {
-        this.instantiate(_context, this.NUM_MAPPING_POLLS, username, password);
+        this.instantiate(_context, PollingMode.ADAPTIVE, MIN_ADAPTIVE_MAPPING_POLLS, NUM_MAPPING_POLLS,
+                         username, password);
         this.floor_image = _floor_image;
         this.location_uri = _location_uri;
         this.uploadType = UploadType.UPLOAD;
-        this.wifiManager.startScan();
+        this.startScanning();
     }
 
     /**
@@ -70,9 +94,39 @@ public abstract class AccessPointManager {
      * @param _context          The context to operate with
      */
     public AccessPointManager(Context _context) {
-        this.instantiate(_context, this.NUM_QUERY_POLLS, username, password);
+        this(_context, PollingMode.ADAPTIVE);
+    }
+
+    /**
+     * Create an AccessPointManager that allows for querying with the access points seen.
+     *      If the ContinuousScanner is running and has recent readings, those are used straight
+     *      away instead of scanning from scratch.
+     * @param _context          The context to operate with
+     * @param _polling_mode     Whether to stop scanning early once the readings are stable
+     */
+    public AccessPointManager(Context _context, PollingMode _polling_mode) {
+        this.instantiate(_context, _polling_mode, NUM_QUERY_POLLS,
+                         _polling_mode == PollingMode.ADAPTIVE ? MAX_ADAPTIVE_QUERY_POLLS : NUM_QUERY_POLLS,
+                         username, password);
         this.uploadType = UploadType.QUERY;
-        this.wifiManager.startScan();
+
+        ContinuousScanner continuousScanner = ContinuousScanner.getRunningInstance();
+        final ArrayList<AccessPoint> fingerprint = continuousScanner == null
+                                                        ? null
+                                                        : continuousScanner.getFingerprint(null);
+        if (fingerprint != null && ! fingerprint.isEmpty()) {
+            /* Post it, so that the subclass has finished constructing before it is called */
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    if (! cancelled) {
+                        allDataReceived(fingerprint);
+                    }
+                }
+            });
+        } else {
+            this.startScanning();
+        }
     }
 
     /**
@@ -80,161 +134,157 @@ public abstract class AccessPointManager {
      *      We have to do it this way and not with a private constructor so that we can set the
      *      uploadType and not have a race condition with starting the wifi scan
      * @param _context          The context to operate with
+     * @param _polling_mode     Whether to stop scanning early once the readings are stable
+     * @param _min_polls        The fewest polls to perform before stopping early
+     * @param _num_polls        The most polls to perform
      * @param username          The username to authenticate with
      * @param password          The password to authenticate with
      */
-    private void instantiate(Context _context, int _num_polls, String username, String password) {
+    private void instantiate(Context _context, PollingMode _polling_mode, int _min_polls, int _num_polls,
+                             String username, String password) {
         this.username = username;
         this.password = password;
         this.context = _context;
+        this.pollingMode = _polling_mode;
+        this.min_polls = _min_polls;
         this.num_polls = _num_polls;
         this.wifiManager = (WifiManager)this.context.getSystemService(Context.WIFI_SERVICE);
         this.num_times_called = 0;
-        this.MAC_Aggregator = new HashMap<String, ArrayList<Integer>>();
+        this.num_stale_scans = 0;
+        this.freshnessFilter = new ScanFreshnessFilter();
+        this.MAC_Aggregator = new AccessPointAggregator();
         this.broadcastReceiver = new WifiScanReceived();
+    }
+
+    /**
+     * Listen for scan results and kick off the first scan
+     */
+    private void startScanning() {
         this.context.registerReceiver(this.broadcastReceiver,
                 new IntentFilter(wifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+        this.listening = true;
+        this.wifiManager.startScan();
     }
 
     /**
-     * Parse through the WiFi scan results and aggregate them in to a HashTable
-     * The HashTable keys are the BSSIDs of the access points, and
-     *      the values are lists of strengths associated with the BSSID
+     * Stop listening for scan results, if we still are
      */
-    private void findAccessPoints() {
-        final List<ScanResult> results = this.wifiManager.getScanResults();
-        for (final ScanResult result : results) {
-            if (! this.MAC_Aggregator.containsKey(result.BSSID)) {
-                this.MAC_Aggregator.put(result.BSSID, new ArrayList<Integer>());
-            }
-            this.MAC_Aggregator.get(result.BSSID).add(result.level);
+    private void stopScanning() {
+        if (this.listening) {
+            this.context.unregisterReceiver(this.broadcastReceiver);
+            this.listening = false;
         }
     }
 
     /**
-     * Compute the standard deviation of the strengths, with a specified mean
-     * @param strengths     An Integer list of strength to find the standard deviation of
-     * @param mean          The mean to compute the standard deviation around
-     * @return the standard deviation
+     * Stop scanning. Nothing is uploaded, and allDataReceived is never called.
+     *      Must be called from the main thread.
      */
-    private double standard_deviation(ArrayList<Integer> strengths, double mean) {
-        int strength_size = strengths.size();
-        double variance = 0;
+    public void cancel() {
+        this.cancelled = true;
+        this.stopScanning();
+    }
 
-        /* If we have one or fewer strengths, there is no deviation */
-        if (strength_size <= 1) {
-            return 0;
+    /**
+     * Parse through the WiFi scan results and aggregate them in to the running statistics
+     *      of the strengths associated with each BSSID.
+     * Results that were already counted in an earlier scan are skipped.
+     * @return true if the scan contained at least one new reading
+     */
+    private boolean findAccessPoints() {
+        final List<ScanResult> results = this.wifiManager.getScanResults();
+        if (results == null) {
+            return false;
         }
-
-        for(int strength: strengths) {
-            variance += Math.pow(strength - mean, 2);
+        this.freshnessFilter.beginScan(results);
+        for (final ScanResult result : results) {
+            long bssid = MacAddresses.pack(result.BSSID);
+            if (bssid == MacAddresses.INVALID || ! this.freshnessFilter.isFresh(bssid, result)) {
+                continue;
+            }
+            this.MAC_Aggregator.add(bssid, result.level);
         }
-
-        variance /= (strength_size - 1);
-        return Math.sqrt(variance);
+        return this.freshnessFilter.getFreshCount() > 0;
     }
 
     /**
-     * Compute the mean strength for a list of strengths
-     * @param strengths     The list of strengths
-     * @return the mean value of the strengths
+     * Determine whether we have scanned enough times to build a reliable fingerprint
+     * @return true if no more polls should be performed
      */
-    private double mean_value(ArrayList<Integer> strengths) {
-        int strength_size = strengths.size();
-        double sum = 0;
-
-        /* If there are no strengths, there is no mean */
-        if(strength_size == 0) {
-            return 0;
+    private boolean isDoneScanning() {
+        if (this.num_times_called >= this.num_polls) {
+            return true;
         }
-
-        for(double strength: strengths) {
-            sum += strength;
+        if (this.num_stale_scans >= MAX_STALE_SCANS) {
+            return true;
         }
-
-        return sum / (double)strength_size;
+        return this.pollingMode == PollingMode.ADAPTIVE
+                && this.num_times_called >= this.min_polls
+                && this.MAC_Aggregator.hasConverged(CONVERGENCE_ACCESS_POINTS, CONVERGENCE_STANDARD_ERROR);
     }
 
     /**
-     *
-     * @return a JSONArray of AccessPoint
+     * Average the statistics of every access point seen
+     * @param location_uri  The location uri to associate the AccessPoints with
+     * @return the averaged AccessPoints
      */
     private ArrayList<AccessPoint> averageAccessPointsMap(String location_uri) {
-        double mean_signal_strength;
-        double RSS_std_deviation;
-        JSONArray all_access_points = new JSONArray();
-        ArrayList<AccessPoint> accessPoints = new ArrayList<AccessPoint>();
-
-        for(Map.Entry<String, ArrayList<Integer>> entry: this.MAC_Aggregator.entrySet()) {
-                mean_signal_strength = mean_value(entry.getValue());
-                RSS_std_deviation = standard_deviation(entry.getValue(), mean_signal_strength);
-
-                AccessPoint accessPoint = new AccessPoint(entry.getKey(),
-                                                          mean_signal_strength,
-                                                          RSS_std_deviation,
-                                                          location_uri);
-                accessPoints.add(accessPoint);
-        }
-        return accessPoints;
+        return this.MAC_Aggregator.getAccessPoints(location_uri);
     }
 
 
     /**
-     * Uploads the AccessPoints to the server for mapping purposes
-     * @param accessPointData   The JSONArray of Access Point Information
+     * Queues the AccessPoints for upload to the server for mapping purposes.
+     *      The UploadQueue batches them with other locations before sending them.
+     * @param accessPoints  The averaged Access Point Information
      */
-    void uploadNewPoints(JSONArray accessPointData) {
-
-        try {
-            String url = this.context.getString(R.string.accesspoint_endpoint);
-            JSONObject data = new JSONObject();
-            data.put("objects", accessPointData);
-            PostAccessPointsTask post_access_points = new PostAccessPointsTask(url,
-                                                                               data,
-                                                                               this.context,
-                                                                               this.floor_image,
-                                                                               this.username,
-                                                                               this.password);
-            post_access_points.execute();
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+    void uploadNewPoints(ArrayList<AccessPoint> accessPoints) {
+        UploadQueue.getInstance(this.context).enqueue(accessPoints, this.username, this.password);
     }
 
     /**
      * A Broadcast Receiver class to listen for WifiScanReceived events.
-     * When a scan is received, it determines if we have collected the number of required scans.
+     * When a scan is received, it adds the new data seen to the table of BSSID: Signal strength
+     *      statistics and then determines if we have collected enough scans.
+     *      Only scans that contained new readings count as a poll.
      *      If so, it averages the access point information and uploads it to the server
-     *      If not, it adds the data seen to the HashMap of BSSID: Signal strength pairs and then
-     *          starts another scan
+     *      If not, it starts another scan
      */
     private class WifiScanReceived extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
             /* Get a reference to the containing class, so that we can use the variables */
             AccessPointManager outerAPM = AccessPointManager.this;
+            if (outerAPM.cancelled) {
+                return;
+            }
 
-            if(outerAPM.num_times_called < outerAPM.num_polls ) {
-                outerAPM.findAccessPoints();
-                outerAPM.wifiManager.startScan();
+            if (outerAPM.findAccessPoints()) {
+                outerAPM.num_times_called++;
+                outerAPM.num_stale_scans = 0;
+            } else {
+                outerAPM.num_stale_scans++;
             }
 
-            /* If we've performed the correct number of scans... */
-            if (outerAPM.num_times_called == outerAPM.num_polls) {
+            /* If we've performed enough scans... */
+            if (outerAPM.isDoneScanning()) {
                 /* Immediately unregister the receiver so that we don't listen for any more */
-                outerAPM.context.unregisterReceiver(outerAPM.broadcastReceiver);
+                outerAPM.stopScanning();
                 ArrayList<AccessPoint> uploadable = averageAccessPointsMap(outerAPM.location_uri);
 
                 /* Either do one or the other */
                 if (outerAPM.uploadType == UploadType.UPLOAD){
-                    /* Upload the points and associate them with this location */
-                    //uploadNewPoints(uploadable);
+                    /* Upload the points and associate them with this location, if there are any */
+                    if (! uploadable.isEmpty()) {
+                        uploadNewPoints(uploadable);
+                    }
                 } else if (outerAPM.uploadType == UploadType.QUERY) {
-                    /* Use the seen points to compute our location */
+                    /* Use the seen points to compute our location; empty if no access point was seen */
                     allDataReceived(uploadable);
                 }
+            } else {
+                outerAPM.wifiManager.startScan();
             }
-            outerAPM.num_times_called++;
 
             /* For debugging purposes, inform the user after every 5 scans */
             if (outerAPM.num_times_called % 5 == 0) {
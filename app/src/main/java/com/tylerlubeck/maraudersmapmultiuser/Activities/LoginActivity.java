@@ -17,6 +17,7 @@ import com.facebook.FacebookSdk;
 import com.facebook.login.LoginManager;
 import com.facebook.login.LoginResult;
 import com.tylerlubeck.maraudersmapmultiuser.Tasks.CreateUserAsyncTask;
+import com.tylerlubeck.maraudersmapmultiuser.Tasks.RequestExecutor;
 import com.tylerlubeck.maraudersmapmultiuser.R;
 
 import org.apache.http.message.BasicNameValuePair;
@@ -58,7 +59,7 @@ public class LoginActivity extends Activity {
 
                 new CreateUserAsyncTask(LoginActivity.this,
                         getString(R.string.account_creation_endpoint),
-                        params).execute();
+                        params).executeWithPriority(RequestExecutor.Priority.NORMAL);
             }
 
             @Override
@@ -12,12 +12,22 @@ import com.facebook.AccessToken;
 import com.facebook.login.LoginManager;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GooglePlayServicesUtil;
+import com.nostra13.universalimageloader.cache.disc.impl.ext.LruDiskCache;
+import com.nostra13.universalimageloader.cache.disc.naming.Md5FileNameGenerator;
+import com.nostra13.universalimageloader.cache.memory.impl.LruMemoryCache;
 import com.nostra13.universalimageloader.core.ImageLoader;
 import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
+import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
 import com.tylerlubeck.maraudersmapmultiuser.Fragment.BuildingMapperFragment;
 import com.tylerlubeck.maraudersmapmultiuser.Fragment.NavigationDrawerFragment;
+import com.tylerlubeck.maraudersmapmultiuser.Positioning.KnnPositioningEngine;
 import com.tylerlubeck.maraudersmapmultiuser.R;
+import com.tylerlubeck.maraudersmapmultiuser.UploadQueue;
 import com.tylerlubeck.maraudersmapmultiuser.Fragment.SelectFriendFragment;
+import com.tylerlubeck.maraudersmapmultiuser.Models.FloorImageDecoder;
+
+import java.io.File;
+import java.io.IOException;
 
 import io.fabric.sdk.android.Fabric;
 
@@ -26,6 +36,13 @@ public class MainActivity extends Activity
         implements NavigationDrawerFragment.NavigationDrawerCallbacks {
 
     public static final String LOG_TAG = "MARAUDERS_MAP";
+    public static final String FINGERPRINT_DIRECTORY = "fingerprints";
+    public static final String FLOOR_IMAGE_DIRECTORY = "floor_images";
+    /* Decoded images are kept in a fraction of the heap, floor images on disk up to a fixed size */
+    final static int IMAGE_MEMORY_FRACTION_OF_HEAP = 8;
+    final static long IMAGE_DISK_CACHE_BYTES = 50 * 1024 * 1024;
+    /* Each decode of a floor image needs a whole screen's worth of bitmap, so only a few at once */
+    final static int IMAGE_THREADS = 2;
     private final int PLAY_SERVICES_RESOLUTION_REQUEST = 9000;
 
     /**
@@ -49,10 +66,13 @@ public class MainActivity extends Activity
 
         Fabric.with(this, new Crashlytics());
 
-        /* TODO: Add useful configurations */
-        ImageLoaderConfiguration config = new ImageLoaderConfiguration.Builder(this).build();
-        ImageLoader.getInstance().init(config);
+        this.initImageLoader();
+
+        /* Make the fingerprints recorded from earlier locates available for positioning on the device */
+        KnnPositioningEngine.getInstance().loadFloors(new File(getFilesDir(), FINGERPRINT_DIRECTORY));
 
+        /* Send anything the last mapping session left waiting, and keep retrying when back online */
+        UploadQueue.getInstance(this).flush();
 
         setContentView(R.layout.activity_navigation);
 
@@ -64,6 +84,40 @@ public class MainActivity extends Activity
         this.currentFragment = -1;
     }
 
+    /**
+     * Set up the ImageLoader once per process.
+     *      Decoded images go in an LRU cache bounded in bytes, so a repeat locate on the same floor
+     *      shows the image without decoding it again. Downloaded floor images go in an LRU disk
+     *      cache under the files directory, alongside the fingerprints, so that the OS doesn't clear
+     *      it and floors located on the device can be shown without a connection.
+     *      Images already on disk are decoded on the ImageLoader's pool for cached images, which
+     *      downloads never hold up.
+     */
+    private void initImageLoader() {
+        ImageLoader imageLoader = ImageLoader.getInstance();
+        if (imageLoader.isInited()) {
+            return;
+        }
+        int memory_cache_bytes = (int) Math.min(Integer.MAX_VALUE,
+                                                Runtime.getRuntime().maxMemory() / IMAGE_MEMORY_FRACTION_OF_HEAP);
+        ImageLoaderConfiguration.Builder builder = new ImageLoaderConfiguration.Builder(this)
+                .imageDecoder(new FloorImageDecoder(false))
+                .memoryCache(new LruMemoryCache(memory_cache_bytes))
+                .denyCacheImageMultipleSizesInMemory()
+                .threadPoolSize(IMAGE_THREADS)
+                .threadPriority(Thread.NORM_PRIORITY - 1)
+                .tasksProcessingOrder(QueueProcessingType.LIFO);
+        try {
+            builder.diskCache(new LruDiskCache(new File(getFilesDir(), FLOOR_IMAGE_DIRECTORY),
+                                               new Md5FileNameGenerator(), IMAGE_DISK_CACHE_BYTES));
+        } catch (IOException e) {
+            /* The default disk cache, in the cache directory, will have to do */
+            Log.e(LOG_TAG, "Couldn't open the floor image cache: " + e.getMessage());
+            Crashlytics.logException(e);
+        }
+        imageLoader.init(builder.build());
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -1,8 +1,6 @@
 package com.tylerlubeck.maraudersmapmultiuser.Activities;
 
 import android.app.Activity;
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
@@ -12,9 +10,10 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.crashlytics.android.Crashlytics;
+import com.tylerlubeck.maraudersmapmultiuser.API.ApiClient;
 import com.tylerlubeck.maraudersmapmultiuser.API.PositioningService;
-import com.tylerlubeck.maraudersmapmultiuser.API.RequestInterceptors;
-import com.tylerlubeck.maraudersmapmultiuser.AccessPointManager;
+import com.tylerlubeck.maraudersmapmultiuser.ContinuousScanner;
+import com.tylerlubeck.maraudersmapmultiuser.LocateCoordinator;
 import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
 import com.tylerlubeck.maraudersmapmultiuser.Models.RespondToRequestBody;
 import com.tylerlubeck.maraudersmapmultiuser.R;
@@ -22,9 +21,7 @@ import com.tylerlubeck.maraudersmapmultiuser.R;
 import java.util.ArrayList;
 
 import retrofit.Callback;
-import retrofit.RestAdapter;
 import retrofit.RetrofitError;
-import retrofit.android.AndroidLog;
 import retrofit.client.Response;
 
 
@@ -36,6 +33,8 @@ public class RespondToRequestActivity extends Activity implements View.OnClickLi
     ProgressBar progress;
     Button allowBtn;
     Button denyBtn;
+    /* The scan for the response, while it is running */
+    LocateCoordinator.Ticket scanTicket;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -60,6 +59,29 @@ public class RespondToRequestActivity extends Activity implements View.OnClickLi
         denyBtn.setOnClickListener(this);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        /* Start collecting readings while the user decides, so that Allow doesn't have to start cold */
+        ContinuousScanner.acquire(this);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        ContinuousScanner.release();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        /* Nobody is left to send the response to */
+        if (this.scanTicket != null) {
+            this.scanTicket.cancel();
+            this.scanTicket = null;
+        }
+    }
+
     @Override
     public void onClick(View view) {
         boolean allow = view.getId() == R.id.allow_response_btn;
@@ -79,28 +101,20 @@ public class RespondToRequestActivity extends Activity implements View.OnClickLi
     }
 
     private PositioningService getPositioningService() {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
-        String apiKey = preferences.getString("api_key", "");
-        String facebookUsername = preferences.getString("facebook_username", "");
-        RestAdapter restAdapter  = new RestAdapter.Builder()
-                .setEndpoint(getString(R.string.root_server))
-                .setLogLevel(RestAdapter.LogLevel.FULL)
-                .setLog(new AndroidLog(MainActivity.LOG_TAG))
-                .setRequestInterceptor(new RequestInterceptors.AuthorizedHeaderIntercepter(facebookUsername, apiKey))
-                .build();
-
-        return restAdapter.create(PositioningService.class);
+        return ApiClient.getInstance(this).getPositioningService();
     }
 
 
     void allowRequest(final RespondToRequestBody response) {
-        new AccessPointManager(this) {
+        /* Shares the scan with any locate that is already running */
+        this.scanTicket = LocateCoordinator.getInstance(this).scan(new LocateCoordinator.ScanListener() {
             @Override
-            protected void allDataReceived(ArrayList<AccessPoint> accessPointData) {
+            public void onScanned(ArrayList<AccessPoint> accessPointData) {
+                scanTicket = null;
                 response.setAccessPoints(accessPointData);
                 sendResponse(response);
             }
-        };
+        });
     }
 
     void sendResponse(RespondToRequestBody response) {
@@ -0,0 +1,167 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+import java.util.Arrays;
+
+/**
+ * A hash table keyed by packed 48-bit BSSIDs (see {@link MacAddresses#pack(String)}).
+ *
+ * Keys are kept in a primitive long array with open addressing and linear probing, so looking
+ * up an access point never boxes the key or hashes a String.
+ *
+ * Iterate over the table by slot:
+ * <pre>
+ *     for (int slot = 0; slot &lt; table.capacity(); slot++) {
+ *         if (table.isOccupied(slot)) {
+ *             use(table.keyAt(slot), table.valueAt(slot));
+ *         }
+ *     }
+ * </pre>
+ * @param <V>   The type of value stored for each BSSID
+ */
+public class BssidTable<V> {
+    /* BSSIDs only use the low 48 bits, so an all-ones key can never be a real access point */
+    private static final long EMPTY = -1L;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    public BssidTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expected_size     The number of access points expected, to avoid resizing
+     */
+    public BssidTable(int expected_size) {
+        int capacity = Integer.highestOneBit(Math.max(expected_size, 2) * 2 - 1) << 1;
+        this.allocate(capacity);
+    }
+
+    /**
+     * @param bssid     The packed BSSID to look up
+     * @return the value stored for the BSSID, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long bssid) {
+        int slot = this.findSlot(bssid);
+        return this.keys[slot] == EMPTY ? null : (V) this.values[slot];
+    }
+
+    /**
+     * @param bssid     The packed BSSID to look up
+     * @return true if there is a value stored for the BSSID
+     */
+    public boolean containsKey(long bssid) {
+        return this.keys[this.findSlot(bssid)] != EMPTY;
+    }
+
+    /**
+     * Store a value for a BSSID, replacing any existing one
+     * @param bssid     The packed BSSID
+     * @param value     The value to store
+     */
+    public void put(long bssid, V value) {
+        if (bssid == EMPTY) {
+            throw new IllegalArgumentException("Not a valid BSSID");
+        }
+        int slot = this.findSlot(bssid);
+        if (this.keys[slot] == EMPTY) {
+            /* Keep the table at most half full so that probe sequences stay short */
+            if ((this.size + 1) * 2 > this.keys.length) {
+                this.grow();
+                slot = this.findSlot(bssid);
+            }
+            this.keys[slot] = bssid;
+            this.size++;
+        }
+        this.values[slot] = value;
+    }
+
+    /**
+     * Remove every entry, keeping the allocated storage
+     */
+    public void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    /**
+     * @return the number of BSSIDs stored
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of slots in the table, for iterating with {@link #keyAt(int)}
+     */
+    public int capacity() {
+        return this.keys.length;
+    }
+
+    /**
+     * @param slot  A slot index below {@link #capacity()}
+     * @return true if the slot holds an entry
+     */
+    public boolean isOccupied(int slot) {
+        return this.keys[slot] != EMPTY;
+    }
+
+    /**
+     * @param slot  An occupied slot index
+     * @return the BSSID stored in the slot
+     */
+    public long keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    /**
+     * @param slot  An occupied slot index
+     * @return the value stored in the slot
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) this.values[slot];
+    }
+
+    private int findSlot(long bssid) {
+        int slot = hash(bssid) & this.mask;
+        while (this.keys[slot] != EMPTY && this.keys[slot] != bssid) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] old_keys = this.keys;
+        Object[] old_values = this.values;
+        this.allocate(old_keys.length * 2);
+        for (int i = 0; i < old_keys.length; i++) {
+            if (old_keys[i] != EMPTY) {
+                int slot = this.findSlot(old_keys[i]);
+                this.keys[slot] = old_keys[i];
+                this.values[slot] = old_values[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    /**
+     * Spread the bits of the BSSID. Access points from one vendor share the top 24 bits,
+     *      so the low bits alone would cluster badly.
+     */
+    private static int hash(long bssid) {
+        long h = bssid * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,183 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps scanning for access points in the background for as long as somebody needs it,
+ *      so that an up to date fingerprint is available immediately instead of after a full
+ *      set of scans.
+ *
+ * Each BSSID gets a SampleWindow of its most recent readings. Fingerprints are built from the
+ *      exponentially decayed mean and standard deviation of each window.
+ *
+ * Usage is reference counted: call {@link #acquire(Context)} when a screen that locates the user
+ *      becomes visible, and {@link #release()} when it goes away.
+ */
+public class ContinuousScanner {
+    final static int WINDOW_SIZE = 8;
+    final static long SCAN_INTERVAL_MS = 5000;
+    final static double DECAY_TIME_CONSTANT_MS = 15000;
+    final static long MAX_SAMPLE_AGE_MS = 30000;
+    final static int MIN_SCANS_FOR_FINGERPRINT = 2;
+
+    private static ContinuousScanner instance;
+    private static int reference_count;
+
+    private final Context context;
+    private final WifiManager wifiManager;
+    private final BroadcastReceiver broadcastReceiver;
+    private final Handler handler;
+    private final BssidTable<SampleWindow> windows;
+    private final ScanFreshnessFilter freshnessFilter;
+    private long last_scan_time;
+    private int num_scans;
+
+    private final Runnable scanRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ContinuousScanner.this.wifiManager.startScan();
+        }
+    };
+
+    private ContinuousScanner(Context _context) {
+        this.context = _context.getApplicationContext();
+        this.wifiManager = (WifiManager) this.context.getSystemService(Context.WIFI_SERVICE);
+        this.handler = new Handler(Looper.getMainLooper());
+        this.windows = new BssidTable<SampleWindow>();
+        this.freshnessFilter = new ScanFreshnessFilter();
+        this.last_scan_time = Long.MIN_VALUE;
+        this.broadcastReceiver = new WifiScanReceived();
+    }
+
+    /**
+     * Start scanning continuously if nobody else has already
+     * @param context   The context to operate with
+     */
+    public static synchronized void acquire(Context context) {
+        if (reference_count == 0) {
+            instance = new ContinuousScanner(context);
+            instance.start();
+        }
+        reference_count++;
+    }
+
+    /**
+     * Stop scanning once everybody who acquired the scanner has released it
+     */
+    public static synchronized void release() {
+        if (reference_count == 0) {
+            return;
+        }
+        reference_count--;
+        if (reference_count == 0) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    /**
+     * @return the running scanner, or null if nobody has acquired it
+     */
+    public static synchronized ContinuousScanner getRunningInstance() {
+        return instance;
+    }
+
+    private void start() {
+        this.context.registerReceiver(this.broadcastReceiver,
+                new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+        this.wifiManager.startScan();
+    }
+
+    private void stop() {
+        this.handler.removeCallbacks(this.scanRunnable);
+        this.context.unregisterReceiver(this.broadcastReceiver);
+        this.windows.clear();
+        this.freshnessFilter.clear();
+    }
+
+    /**
+     * Build a fingerprint from the recent readings, if there are enough of them
+     * @param location_uri  The location uri to associate the AccessPoints with
+     * @return the decayed average of every recently seen access point,
+     *              or null if the scanner has not warmed up yet
+     */
+    public synchronized ArrayList<AccessPoint> getFingerprint(String location_uri) {
+        long now = SystemClock.elapsedRealtime();
+        if (this.num_scans < MIN_SCANS_FOR_FINGERPRINT || now - this.last_scan_time > MAX_SAMPLE_AGE_MS) {
+            return null;
+        }
+
+        ArrayList<AccessPoint> accessPoints = new ArrayList<AccessPoint>(this.windows.size());
+        for (int slot = 0; slot < this.windows.capacity(); slot++) {
+            if (! this.windows.isOccupied(slot)) {
+                continue;
+            }
+            SampleWindow window = this.windows.valueAt(slot);
+            if (window.getCount() == 0 || now - window.getNewestTimestamp() > MAX_SAMPLE_AGE_MS) {
+                continue;
+            }
+            window.decay(now, DECAY_TIME_CONSTANT_MS);
+            accessPoints.add(new AccessPoint(this.windows.keyAt(slot),
+                                             window.getMean(),
+                                             window.getStandardDeviation(),
+                                             window.getCount(),
+                                             location_uri));
+        }
+        return accessPoints;
+    }
+
+    /**
+     * Add the new readings from the latest scan to each access point's window.
+     *      Cached results that were already recorded are skipped.
+     */
+    private synchronized void recordScanResults() {
+        long now = SystemClock.elapsedRealtime();
+        final List<ScanResult> results = this.wifiManager.getScanResults();
+        if (results == null) {
+            return;
+        }
+        this.freshnessFilter.beginScan(results);
+        for (final ScanResult result : results) {
+            long bssid = MacAddresses.pack(result.BSSID);
+            if (bssid == MacAddresses.INVALID || ! this.freshnessFilter.isFresh(bssid, result)) {
+                continue;
+            }
+            SampleWindow window = this.windows.get(bssid);
+            if (window == null) {
+                window = new SampleWindow(WINDOW_SIZE);
+                this.windows.put(bssid, window);
+            }
+            window.add(now, result.level);
+        }
+        if (this.freshnessFilter.getFreshCount() > 0) {
+            this.last_scan_time = now;
+            this.num_scans++;
+        }
+    }
+
+    /**
+     * Records every scan that completes, then schedules the next one
+     */
+    private class WifiScanReceived extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            ContinuousScanner outer = ContinuousScanner.this;
+            outer.recordScanResults();
+            outer.handler.removeCallbacks(outer.scanRunnable);
+            outer.handler.postDelayed(outer.scanRunnable, SCAN_INTERVAL_MS);
+        }
+    }
+}
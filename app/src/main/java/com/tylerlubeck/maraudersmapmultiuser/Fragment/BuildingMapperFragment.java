@@ -2,10 +2,8 @@ package com.tylerlubeck.maraudersmapmultiuser.Fragment;
 
 import android.app.Fragment;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -17,21 +15,18 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import com.crashlytics.android.Crashlytics;
-import com.tylerlubeck.maraudersmapmultiuser.API.PositioningService;
-import com.tylerlubeck.maraudersmapmultiuser.API.RequestInterceptors;
-import com.tylerlubeck.maraudersmapmultiuser.AccessPointManager;
 import com.tylerlubeck.maraudersmapmultiuser.Activities.MainActivity;
+import com.tylerlubeck.maraudersmapmultiuser.ContinuousScanner;
+import com.tylerlubeck.maraudersmapmultiuser.LocateCoordinator;
 import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.FloorImagePrefetcher;
 import com.tylerlubeck.maraudersmapmultiuser.Models.FloorMapImage;
 import com.tylerlubeck.maraudersmapmultiuser.Models.LocateMeBody;
 import com.tylerlubeck.maraudersmapmultiuser.Models.MyLocation;
+import com.tylerlubeck.maraudersmapmultiuser.Positioning.KnnPositioningEngine;
 import com.tylerlubeck.maraudersmapmultiuser.R;
 
-import retrofit.Callback;
-import retrofit.RestAdapter;
 import retrofit.RetrofitError;
-import retrofit.android.AndroidLog;
-import retrofit.client.Response;
 
 import java.util.ArrayList;
 
@@ -45,6 +40,9 @@ public class BuildingMapperFragment extends Fragment implements View.OnClickList
     private ProgressBar progress;
     private TextView we_found_you;
     private TextView user_location;
+    private LocateCoordinator.Ticket locateTicket;
+    /* The fingerprint that couldn't be located, so that trying again doesn't need a new scan */
+    private LocateMeBody failed_fingerprint;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -80,6 +78,29 @@ public class BuildingMapperFragment extends Fragment implements View.OnClickList
         return relativeLayout;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        /* Keep fresh readings around so that pressing Update doesn't have to start cold */
+        ContinuousScanner.acquire(this.getActivity());
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        ContinuousScanner.release();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        this.floor_image.release();
+        if (this.locateTicket != null) {
+            this.locateTicket.cancel();
+            this.locateTicket = null;
+        }
+    }
+
 
     /**
      * If the wifi is not currently enabled, then enable it.
@@ -109,54 +130,69 @@ public class BuildingMapperFragment extends Fragment implements View.OnClickList
         this.floor_image.setImageFromUrl(image_url, x_coordinate, y_coordinate);
     }
 
-    private PositioningService getPositioningService() {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        String apiKey = preferences.getString("api_key", "");
-        String facebookUsername = preferences.getString("facebook_username", "");
-        RestAdapter restAdapter  = new RestAdapter.Builder()
-                .setEndpoint(getString(R.string.root_server))
-                .setLogLevel(RestAdapter.LogLevel.FULL)
-                .setLog(new AndroidLog(MainActivity.LOG_TAG))
-                .setRequestInterceptor(new RequestInterceptors.AuthorizedHeaderIntercepter(facebookUsername, apiKey))
-                .build();
-
-        return restAdapter.create(PositioningService.class);
-    }
-
     /**
-     * Initiates the action that scans for the user's location
+     * Initiates the action that scans for the user's location.
+     *      If a scan or locate is already running, this joins it rather than starting another.
      */
     private void getLocation() {
         Log.d("MARAUDERSMAP", "Looking you up!");
         final boolean wifiWasEnabled = this.ensureWifiEnabled();
+        this.locate(null, wifiWasEnabled);
+    }
+
+    /**
+     * Scan if need be, then ask the server where the fingerprint was taken
+     * @param fingerprint       The access points to locate, or null to scan for them
+     * @param wifiWasEnabled    Whether wifi was on before we started
+     */
+    private void locate(LocateMeBody fingerprint, final boolean wifiWasEnabled) {
+        this.failed_fingerprint = null;
+        LocateCoordinator.Listener listener = new LocateCoordinator.Listener() {
+            private boolean have_estimate;
+
+            @Override
+            public void onScanned(ArrayList<AccessPoint> accessPoints) {
+                /* Show the on-device estimate straight away; the server's answer replaces it */
+                MyLocation localEstimate = KnnPositioningEngine.getInstance().locate(accessPoints);
+                if (localEstimate != null) {
+                    this.have_estimate = true;
+                    displayLocation(localEstimate);
+                }
+            }
+
+            @Override
+            public void onLocated(MyLocation myLocation) {
+                locateTicket = null;
+                displayLocation(myLocation);
+                if (wifiWasEnabled) {
+                    disableWifi();
+                }
+            }
 
-        /* If trying to locate yourself, do two scans and upload it */
-        new AccessPointManager(this.getActivity()) {
             @Override
-            protected void allDataReceived(ArrayList<AccessPoint> accessPointData) {
-                PositioningService positioningService = getPositioningService();
-                LocateMeBody locateMeBody = new LocateMeBody(accessPointData);
-                positioningService.locateMe(locateMeBody, new Callback<MyLocation>() {
-                    @Override
-                    public void success(MyLocation myLocation, Response response) {
-                        displayLocation(myLocation);
-                        if (wifiWasEnabled) {
-                            disableWifi();
-                        }
-                    }
-
-                    @Override
-                    public void failure(RetrofitError error) {
-                        displayError();
-                        Log.e(MainActivity.LOG_TAG, "Failed to get location");
-                        Crashlytics.logException(error);
-                        if (wifiWasEnabled) {
-                            disableWifi();
-                        }
-                    }
-                });
+            public void onFailed(RetrofitError error, LocateMeBody unlocated) {
+                locateTicket = null;
+                if (! this.have_estimate) {
+                    failed_fingerprint = unlocated;
+                    displayError();
+                }
+                Log.e(MainActivity.LOG_TAG, "Failed to get location");
+                Crashlytics.logException(error);
+                if (wifiWasEnabled) {
+                    disableWifi();
+                }
             }
         };
+
+        /* Join the new request before leaving the old one, so that a running locate is kept */
+        LocateCoordinator coordinator = LocateCoordinator.getInstance(this.getActivity());
+        LocateCoordinator.Ticket previous = this.locateTicket;
+        this.locateTicket = fingerprint == null
+                                ? coordinator.locate(listener)
+                                : coordinator.locate(fingerprint, listener);
+        if (previous != null) {
+            previous.cancel();
+        }
     }
 
     private void displayLocation(MyLocation location) {
@@ -166,6 +202,8 @@ public class BuildingMapperFragment extends Fragment implements View.OnClickList
         this.we_found_you.setVisibility(View.VISIBLE);
         this.user_location.setVisibility(View.VISIBLE);
         this.user_location.setText(String.format("Halligan Floor %d", location.getFloorNumber()));
+        /* The user may well move to another floor of the same building next */
+        FloorImagePrefetcher.getInstance(this.getActivity()).prefetchBuilding(location.getBuildingName());
 
     }
 
@@ -193,7 +231,12 @@ public class BuildingMapperFragment extends Fragment implements View.OnClickList
                 this.loadingText.setVisibility(View.VISIBLE);
                 this.progress.setVisibility(View.VISIBLE);
                 this.loadingText.setText("Looking you up...");
-                this.getLocation();
+                if (this.failed_fingerprint != null) {
+                    /* The scan was fine, it was the server that didn't answer */
+                    this.locate(this.failed_fingerprint, false);
+                } else {
+                    this.getLocation();
+                }
                 break;
         }
     }
@@ -1,14 +1,23 @@
 package com.tylerlubeck.maraudersmapmultiuser.Fragment;
 
 import android.os.Bundle;
+import android.preference.Preference;
 import android.preference.PreferenceFragment;
+import android.widget.Toast;
 
+import com.crashlytics.android.Crashlytics;
+import com.tylerlubeck.maraudersmapmultiuser.API.ApiClient;
+import com.tylerlubeck.maraudersmapmultiuser.API.NetworkMetrics;
 import com.tylerlubeck.maraudersmapmultiuser.R;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Created by Tyler on 2/20/2015.
  */
 public class PrefsFragment extends PreferenceFragment {
+    final static String NETWORK_METRICS_FILE = "network_metrics.txt";
 
     /**
      * When created, get the preferences from the xml file
@@ -19,5 +28,35 @@ public class PrefsFragment extends PreferenceFragment {
         super.onCreate(savedInstanceState);
 
         addPreferencesFromResource(R.xml.preferences);
+
+        this.findPreference("dump_network_metrics").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                dumpNetworkMetrics();
+                return true;
+            }
+        });
+
+        this.findPreference(ApiClient.COMPACT_ENCODING_PREFERENCE).setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                ApiClient.getInstance(getActivity()).setCompactEncoding((Boolean) newValue);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Write everything NetworkMetrics has recorded to a file in the app's private storage
+     */
+    private void dumpNetworkMetrics() {
+        File file = new File(this.getActivity().getFilesDir(), NETWORK_METRICS_FILE);
+        try {
+            NetworkMetrics.getInstance().dump(file);
+            Toast.makeText(this.getActivity(), String.format("Saved to %s", file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Crashlytics.logException(e);
+            Toast.makeText(this.getActivity(), "Couldn't save network metrics", Toast.LENGTH_SHORT).show();
+        }
     }
 }
@@ -4,9 +4,7 @@ import android.app.ListFragment;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.View;
 import android.widget.ListView;
@@ -15,8 +13,8 @@ import android.widget.Toast;
 import com.facebook.AccessToken;
 import com.facebook.GraphRequest;
 import com.facebook.GraphResponse;
+import com.tylerlubeck.maraudersmapmultiuser.API.ApiClient;
 import com.tylerlubeck.maraudersmapmultiuser.API.PositioningService;
-import com.tylerlubeck.maraudersmapmultiuser.API.RequestInterceptors;
 import com.tylerlubeck.maraudersmapmultiuser.Activities.MainActivity;
 import com.tylerlubeck.maraudersmapmultiuser.Models.FacebookFriend;
 import com.tylerlubeck.maraudersmapmultiuser.R;
@@ -30,9 +28,7 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 
 import retrofit.Callback;
-import retrofit.RestAdapter;
 import retrofit.RetrofitError;
-import retrofit.android.AndroidLog;
 import retrofit.client.Response;
 
 /**
@@ -84,17 +80,7 @@ public class SelectFriendFragment extends ListFragment {
     }
 
     private PositioningService getPositioningService() {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        String apiKey = preferences.getString("api_key", "");
-        String facebookUsername = preferences.getString("facebook_username", "");
-        RestAdapter restAdapter  = new RestAdapter.Builder()
-                .setEndpoint(getString(R.string.root_server))
-                .setLogLevel(RestAdapter.LogLevel.FULL)
-                .setLog(new AndroidLog(MainActivity.LOG_TAG))
-                .setRequestInterceptor(new RequestInterceptors.AuthorizedHeaderIntercepter(facebookUsername, apiKey))
-                .build();
-
-        return restAdapter.create(PositioningService.class);
+        return ApiClient.getInstance(getActivity()).getPositioningService();
     }
 
 
@@ -0,0 +1,281 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+import android.content.Context;
+
+import com.tylerlubeck.maraudersmapmultiuser.API.ApiClient;
+import com.tylerlubeck.maraudersmapmultiuser.Activities.MainActivity;
+import com.tylerlubeck.maraudersmapmultiuser.API.LocateRequest;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.LocateMeBody;
+import com.tylerlubeck.maraudersmapmultiuser.Models.MyLocation;
+import com.tylerlubeck.maraudersmapmultiuser.Positioning.FingerprintRecorder;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import retrofit.RetrofitError;
+
+/**
+ * Makes sure there is only ever one query scan and one locate request running at a time.
+ *
+ * Asking to scan or locate while one is already running joins the caller on to it, rather than
+ * starting another scan and posting the same fingerprint twice. Every caller gets a Ticket;
+ * once every caller on a scan or request has cancelled its ticket, the work itself is cancelled.
+ *
+ * Everything, including every listener, happens on the main thread.
+ */
+public class LocateCoordinator {
+    /*
+     * Send a second copy of a locate request that hasn't been answered after this long, or 0 to
+     * never hedge. Off until the server is known to drop copies by their request id.
+     */
+    final static long LOCATE_HEDGE_DELAY_MS = 0;
+
+    public interface ScanListener {
+        /**
+         * @param accessPoints  The averaged access points that were seen
+         */
+        void onScanned(ArrayList<AccessPoint> accessPoints);
+    }
+
+    public interface Listener extends ScanListener {
+        /**
+         * @param location  Where the server thinks the user is
+         */
+        void onLocated(MyLocation location);
+
+        /**
+         * @param error         What went wrong with the last attempt
+         * @param fingerprint   The fingerprint that couldn't be located, to try again with
+         */
+        void onFailed(RetrofitError error, LocateMeBody fingerprint);
+    }
+
+    /**
+     * A caller's place on a scan or locate request
+     */
+    public interface Ticket {
+        /**
+         * Stop listening. The work stops too if nobody else is waiting on it.
+         */
+        void cancel();
+    }
+
+    private static LocateCoordinator instance;
+
+    private final Context context;
+    private final FingerprintRecorder recorder;
+    private ScanFlight scanFlight;
+    private LocateFlight locateFlight;
+
+    private LocateCoordinator(Context _context) {
+        this.context = _context;
+        this.recorder = new FingerprintRecorder(new File(_context.getFilesDir(), MainActivity.FINGERPRINT_DIRECTORY));
+    }
+
+    /**
+     * @param context   Any context; only the application context is held on to
+     * @return the process-wide coordinator, creating it on first use
+     */
+    public static synchronized LocateCoordinator getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocateCoordinator(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Collect a fingerprint, joining the scan already running if there is one
+     * @param listener  Told about the fingerprint
+     * @return the caller's ticket
+     */
+    public Ticket scan(ScanListener listener) {
+        if (this.scanFlight == null) {
+            this.scanFlight = new ScanFlight();
+        }
+        return this.scanFlight.join(listener);
+    }
+
+    /**
+     * Scan, then ask the server where the fingerprint was taken.
+     *      If a locate is already running, the caller joins it instead, and is told about its
+     *      fingerprint straight away if the scan has already finished.
+     * @param listener  Told about the fingerprint, then the location
+     * @return the caller's ticket
+     */
+    public Ticket locate(Listener listener) {
+        if (this.locateFlight == null) {
+            this.locateFlight = new LocateFlight(null);
+        }
+        return this.locateFlight.join(listener);
+    }
+
+    /**
+     * Ask the server where an already collected fingerprint was taken, without scanning again.
+     *      If a locate is already running, the caller joins it instead.
+     * @param fingerprint   The access points to locate
+     * @param listener      Told about the location; onScanned is not called
+     * @return the caller's ticket
+     */
+    public Ticket locate(LocateMeBody fingerprint, Listener listener) {
+        if (this.locateFlight == null) {
+            this.locateFlight = new LocateFlight(fingerprint);
+        }
+        return this.locateFlight.join(listener);
+    }
+
+    /**
+     * Work that any number of callers can be waiting on
+     * @param <L>   The type of the callers' listeners
+     */
+    private abstract class Flight<L> {
+        final ArrayList<L> listeners = new ArrayList<L>();
+
+        Ticket join(final L listener) {
+            this.listeners.add(listener);
+            this.onJoined(listener);
+            return new Ticket() {
+                @Override
+                public void cancel() {
+                    leave(listener);
+                }
+            };
+        }
+
+        void leave(L listener) {
+            if (this.listeners.remove(listener) && this.listeners.isEmpty()) {
+                this.abandon();
+            }
+        }
+
+        /**
+         * Take the listeners, and stop accepting new ones
+         * @return the listeners that were waiting
+         */
+        ArrayList<L> finish() {
+            this.detach();
+            ArrayList<L> waiting = new ArrayList<L>(this.listeners);
+            this.listeners.clear();
+            return waiting;
+        }
+
+        abstract void onJoined(L listener);
+
+        /* Nobody is waiting any more, so stop the work */
+        abstract void abandon();
+
+        /* Stop new callers joining this flight */
+        abstract void detach();
+    }
+
+    private class ScanFlight extends Flight<ScanListener> {
+        private final AccessPointManager manager;
+
+        ScanFlight() {
+            this.manager = new AccessPointManager(LocateCoordinator.this.context) {
+                @Override
+                protected void allDataReceived(ArrayList<AccessPoint> accessPointData) {
+                    for (ScanListener listener : ScanFlight.this.finish()) {
+                        listener.onScanned(accessPointData);
+                    }
+                }
+            };
+        }
+
+        @Override
+        void onJoined(ScanListener listener) {}
+
+        @Override
+        void abandon() {
+            this.detach();
+            this.manager.cancel();
+        }
+
+        @Override
+        void detach() {
+            if (LocateCoordinator.this.scanFlight == this) {
+                LocateCoordinator.this.scanFlight = null;
+            }
+        }
+    }
+
+    private class LocateFlight extends Flight<Listener> implements ScanListener, LocateRequest.Listener {
+        private ArrayList<AccessPoint> accessPoints;
+        private LocateMeBody fingerprint;
+        private Ticket scanTicket;
+        private LocateRequest request;
+
+        /**
+         * @param _fingerprint  The fingerprint to locate, or null to scan for one
+         */
+        LocateFlight(LocateMeBody _fingerprint) {
+            if (_fingerprint == null) {
+                this.scanTicket = LocateCoordinator.this.scan(this);
+            } else {
+                this.send(_fingerprint);
+            }
+        }
+
+        @Override
+        void onJoined(Listener listener) {
+            if (this.accessPoints != null) {
+                listener.onScanned(this.accessPoints);
+            }
+        }
+
+        @Override
+        public void onScanned(ArrayList<AccessPoint> _accessPoints) {
+            this.scanTicket = null;
+            this.accessPoints = _accessPoints;
+            for (Listener listener : new ArrayList<Listener>(this.listeners)) {
+                listener.onScanned(_accessPoints);
+            }
+            /* Every listener may have cancelled while hearing about the scan */
+            if (! this.listeners.isEmpty()) {
+                this.send(new LocateMeBody(_accessPoints));
+            }
+        }
+
+        private void send(LocateMeBody _fingerprint) {
+            this.fingerprint = _fingerprint;
+            this.request = ApiClient.getInstance(LocateCoordinator.this.context).newLocateRequest(_fingerprint);
+            this.request.setHedgeDelay(LOCATE_HEDGE_DELAY_MS);
+            this.request.start(this);
+        }
+
+        @Override
+        public void onLocated(MyLocation location) {
+            /* Whatever the server places is remembered for positioning on the device */
+            LocateCoordinator.this.recorder.record(location, this.fingerprint.getAccessPoints());
+            for (Listener listener : this.finish()) {
+                listener.onLocated(location);
+            }
+        }
+
+        @Override
+        public void onFailed(RetrofitError error) {
+            for (Listener listener : this.finish()) {
+                listener.onFailed(error, this.fingerprint);
+            }
+        }
+
+        @Override
+        void abandon() {
+            this.detach();
+            if (this.scanTicket != null) {
+                this.scanTicket.cancel();
+                this.scanTicket = null;
+            }
+            if (this.request != null) {
+                this.request.cancel();
+            }
+        }
+
+        @Override
+        void detach() {
+            if (LocateCoordinator.this.locateFlight == this) {
+                LocateCoordinator.this.locateFlight = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+/**
+ * Helpers for working with MAC addresses (BSSIDs) packed in to the low 48 bits of a long.
+ *
+ * Also acts as a process-wide registry of MAC address Strings, so that every AccessPoint for the
+ * same BSSID shares a single String instance instead of keeping its own copy.
+ */
+public class MacAddresses {
+    /**
+     * Returned by {@link #pack(String)} when the String is not a MAC address
+     */
+    public static final long INVALID = -1L;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final BssidTable<String> registry = new BssidTable<String>(256);
+
+    /**
+     * Pack a MAC address of the form "aa:bb:cc:dd:ee:ff" in to a long.
+     * Any single character may be used as the separator.
+     * @param mac_address   The MAC address to pack
+     * @return the MAC address in the low 48 bits, or {@link #INVALID}
+     */
+    public static long pack(String mac_address) {
+        if (mac_address == null || mac_address.length() != 17) {
+            return INVALID;
+        }
+
+        long packed = 0;
+        for (int octet = 0; octet < 6; octet++) {
+            int high = Character.digit(mac_address.charAt(octet * 3), 16);
+            int low = Character.digit(mac_address.charAt(octet * 3 + 1), 16);
+            if (high < 0 || low < 0) {
+                return INVALID;
+            }
+            packed = (packed << 8) | (high << 4) | low;
+        }
+        return packed;
+    }
+
+    /**
+     * Format a packed MAC address as a lowercase, colon separated String
+     * @param packed    The packed MAC address
+     * @return the MAC address String
+     */
+    public static String format(long packed) {
+        char[] chars = new char[17];
+        for (int octet = 0; octet < 6; octet++) {
+            int value = (int) (packed >>> (40 - octet * 8)) & 0xFF;
+            chars[octet * 3] = HEX_DIGITS[value >>> 4];
+            chars[octet * 3 + 1] = HEX_DIGITS[value & 0x0F];
+            if (octet < 5) {
+                chars[octet * 3 + 2] = ':';
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Get the shared String for a packed MAC address, creating it the first time it is seen
+     * @param packed    The packed MAC address
+     * @return the canonical MAC address String
+     */
+    public static String intern(long packed) {
+        synchronized (registry) {
+            String mac_address = registry.get(packed);
+            if (mac_address == null) {
+                mac_address = format(packed);
+                registry.put(packed, mac_address);
+            }
+            return mac_address;
+        }
+    }
+
+    /**
+     * Private constructor: class cannot be instantiated
+     */
+    private MacAddresses() {
+    }
+}
@@ -7,16 +7,20 @@ import java.util.Date;
 
 import android.support.annotation.NonNull;
 
+import com.tylerlubeck.maraudersmapmultiuser.MacAddresses;
+
 /**
  * Created by brettfischlerandkennethwapman on 10/11/14.
  */
 public class AccessPoint implements Comparable<AccessPoint>{
     private final String location_uri;
     private final String mac_address;
+    private final transient long bssid;
     private final Date recorded;
     private String resource_uri;
     private final double signal_strength;
     private final double standard_deviation;
+    private final transient int sample_count;
 
     /**
      * Creates an AccessPoint object
@@ -26,9 +30,42 @@ public class AccessPoint implements Comparable<AccessPoint>{
      * @param location_uri          The Location associated with this access point
      */
     public AccessPoint(String mac_address, double signal_strength, double standard_deviation, String location_uri) {
-        this.mac_address = mac_address;
+        this.bssid = MacAddresses.pack(mac_address);
+        this.mac_address = this.bssid == MacAddresses.INVALID ? mac_address : MacAddresses.intern(this.bssid);
+        this.signal_strength = signal_strength;
+        this.standard_deviation = standard_deviation;
+        this.sample_count = 0;
+        this.location_uri = location_uri;
+        this.recorded = new Date();
+    }
+
+    /**
+     * Creates an AccessPoint object from a packed BSSID.
+     *      The MAC address String is shared with every other AccessPoint for the same BSSID.
+     * @param bssid                 The MAC Address of the access point, packed in to a long
+     * @param signal_strength       The average RSS of the access point
+     * @param standard_deviation    The standard deviation of the strengths of the access point
+     * @param location_uri          The Location associated with this access point
+     */
+    public AccessPoint(long bssid, double signal_strength, double standard_deviation, String location_uri) {
+        this(bssid, signal_strength, standard_deviation, 0, location_uri);
+    }
+
+    /**
+     * Creates an AccessPoint object from a packed BSSID, remembering how many readings it is based on
+     * @param bssid                 The MAC Address of the access point, packed in to a long
+     * @param signal_strength       The average RSS of the access point
+     * @param standard_deviation    The standard deviation of the strengths of the access point
+     * @param sample_count          The number of readings the average is based on
+     * @param location_uri          The Location associated with this access point
+     */
+    public AccessPoint(long bssid, double signal_strength, double standard_deviation, int sample_count,
+                       String location_uri) {
+        this.bssid = bssid;
+        this.mac_address = MacAddresses.intern(bssid);
         this.signal_strength = signal_strength;
         this.standard_deviation = standard_deviation;
+        this.sample_count = sample_count;
         this.location_uri = location_uri;
         this.recorded = new Date();
     }
@@ -51,19 +88,60 @@ public class AccessPoint implements Comparable<AccessPoint>{
     /**
      * @returns the mac address of the access point
      */
-    String getMacAddress()
+    public String getMacAddress()
     {
         return this.mac_address;
     }
 
+    /**
+     * @returns the MAC address of the access point packed in to a long,
+     *              or MacAddresses.INVALID if it could not be parsed
+     */
+    public long getBssid()
+    {
+        return this.bssid;
+    }
+
     /**
      * @returns the average RSS of the access point
      */
-    double getSignalStrength()
+    public double getSignalStrength()
     {
         return this.signal_strength;
     }
 
+    /**
+     * @returns the standard deviation of the RSS of the access point
+     */
+    public double getStandardDeviation()
+    {
+        return this.standard_deviation;
+    }
+
+    /**
+     * @returns the number of readings the average is based on, or 0 if unknown
+     */
+    public int getSampleCount()
+    {
+        return this.sample_count;
+    }
+
+    /**
+     * @returns when the access point was recorded, in milliseconds since the epoch
+     */
+    public long getRecordedTime()
+    {
+        return this.recorded.getTime();
+    }
+
+    /**
+     * @returns the uri of the Location associated with this access point
+     */
+    public String getLocationUri()
+    {
+        return this.location_uri;
+    }
+
     /**
      * Compare Access Points so that they can be sorted in a list
      * @param accessPoint the access point to compare to
@@ -0,0 +1,73 @@
+package com.tylerlubeck.maraudersmapmultiuser.Models;
+
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes AccessPoints as JSON straight in to a stream, in the same format as
+ * {@link AccessPoint#toJSON()}, without building a JSONObject tree or a String of the whole
+ * payload first.
+ *
+ * A writer reuses its timestamp formatter, so keep one around for a batch of writes.
+ */
+public class AccessPointJsonWriter {
+    private final DateUtilities.ISO8601Formatter formatter;
+
+    public AccessPointJsonWriter() {
+        this.formatter = new DateUtilities.ISO8601Formatter();
+    }
+
+    /**
+     * Write the access points as a JSON array
+     * @param out           The stream to write to. It is flushed, but not closed.
+     * @param accessPoints  The access points to write
+     * @throws IOException  If writing to the stream fails
+     */
+    public void writeArray(Writer out, List<AccessPoint> accessPoints) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.beginArray();
+        for (AccessPoint accessPoint : accessPoints) {
+            this.write(json, accessPoint);
+        }
+        json.endArray();
+        json.flush();
+    }
+
+    /**
+     * Write one access point as a JSON object
+     * @param json          The writer to write to
+     * @param accessPoint   The access point to write
+     * @throws IOException  If writing fails
+     */
+    public void write(JsonWriter json, AccessPoint accessPoint) throws IOException {
+        json.beginObject();
+        json.name("mac_address").value(accessPoint.getMacAddress());
+        json.name("signal_strength");
+        writeNumber(json, accessPoint.getSignalStrength());
+        json.name("standard_deviation");
+        writeNumber(json, accessPoint.getStandardDeviation());
+        json.name("recorded").value(this.formatter.format(accessPoint.getRecordedTime()));
+        if (accessPoint.getLocationUri() != null) {
+            json.name("location").value(accessPoint.getLocationUri());
+        }
+        json.endObject();
+    }
+
+    /**
+     * Write a number the way JSONObject does: whole numbers without a fraction, e.g. -70
+     *      rather than JsonWriter's -70.0
+     * @param json      The writer to write to
+     * @param value     The number to write
+     * @throws IOException  If writing fails
+     */
+    private static void writeNumber(JsonWriter json, double value) throws IOException {
+        if (value == (long) value) {
+            json.value((long) value);
+        } else {
+            json.value(value);
+        }
+    }
+}
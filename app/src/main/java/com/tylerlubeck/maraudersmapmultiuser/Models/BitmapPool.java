@@ -0,0 +1,98 @@
+package com.tylerlubeck.maraudersmapmultiuser.Models;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Bitmaps that are no longer displayed, kept so that the next floor image can be decoded in to
+ * one of them (BitmapFactory.Options.inBitmap) instead of allocating a new one.
+ *
+ * Before KitKat a bitmap can only be reused for an image of exactly the same size and config;
+ * from KitKat on any bitmap with a large enough allocation will do.
+ */
+public class BitmapPool {
+    final static int MAX_POOLED_BITMAPS = 2;
+
+    private static final BitmapPool instance = new BitmapPool();
+
+    /* Most recently released first */
+    private final LinkedList<Bitmap> bitmaps;
+
+    private BitmapPool() {
+        this.bitmaps = new LinkedList<Bitmap>();
+    }
+
+    public static BitmapPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Take a bitmap to decode an image in to
+     * @param width     The width of the decoded image
+     * @param height    The height of the decoded image
+     * @param config    The config of the decoded image
+     * @return a bitmap that can be used as inBitmap, which is no longer in the pool,
+     *              or null if none is big enough
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        long needed = (long) width * height * bytesPerPixel(config);
+        Bitmap best = null;
+        for (Bitmap bitmap : this.bitmaps) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                long size = bitmap.getAllocationByteCount();
+                if (size >= needed && (best == null || size < best.getAllocationByteCount())) {
+                    best = bitmap;
+                }
+            } else if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                    && bitmap.getConfig() == config) {
+                best = bitmap;
+                break;
+            }
+        }
+        if (best != null) {
+            this.bitmaps.remove(best);
+        }
+        return best;
+    }
+
+    /**
+     * Give back a bitmap that nothing displays or draws any more
+     * @param bitmap    The bitmap, which can't be reused unless it is mutable
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || ! bitmap.isMutable()) {
+            return;
+        }
+        for (Bitmap pooled : this.bitmaps) {
+            if (pooled == bitmap) {
+                return;
+            }
+        }
+        this.bitmaps.addFirst(bitmap);
+        /* Forget the oldest; the garbage collector frees them once nothing else refers to them */
+        Iterator<Bitmap> oldest = this.bitmaps.descendingIterator();
+        while (this.bitmaps.size() > MAX_POOLED_BITMAPS) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Forget every pooled bitmap, e.g. when memory is low
+     */
+    public synchronized void clear() {
+        this.bitmaps.clear();
+    }
+
+    static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
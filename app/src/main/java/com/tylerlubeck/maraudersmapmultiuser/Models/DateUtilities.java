@@ -1,15 +1,16 @@
 package com.tylerlubeck.maraudersmapmultiuser.Models;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
 
 /**
  * Created by Tyler on 2/19/2015.
  */
 class DateUtilities {
+    /* "yyyy-MM-dd'T'HH:mm:ss'Z'" */
+    final static int ISO8601_LENGTH = 20;
+
+    private final static long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
     /**
      * Return an ISO 8601 combined date and time string for current date/time
      *
@@ -28,9 +29,82 @@ class DateUtilities {
      * @return String with format "yyyy-MM-dd'T'HH:mm:ss'Z'"
      */
     public static String getISO8601StringForDate(Date date) {
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        return dateFormat.format(date);
+        char[] buffer = new char[ISO8601_LENGTH];
+        formatISO8601(date.getTime(), buffer);
+        return new String(buffer);
+    }
+
+    /**
+     * Write an ISO 8601 combined date and time in UTC, without allocating anything.
+     *      Only years 0 to 9999 are supported.
+     *
+     * @param millis    Milliseconds since the epoch
+     * @param buffer    At least ISO8601_LENGTH chars to write "yyyy-MM-dd'T'HH:mm:ss'Z'" in to
+     */
+    static void formatISO8601(long millis, char[] buffer) {
+        long days = millis / MILLIS_PER_DAY;
+        long millis_of_day = millis % MILLIS_PER_DAY;
+        if (millis_of_day < 0) {
+            days--;
+            millis_of_day += MILLIS_PER_DAY;
+        }
+        int seconds_of_day = (int) (millis_of_day / 1000);
+
+        /* Convert days since the epoch to a proleptic Gregorian date, in 400 year eras */
+        long shifted = days + 719468;
+        long era = (shifted >= 0 ? shifted : shifted - 146096) / 146097;
+        int day_of_era = (int) (shifted - era * 146097);
+        int year_of_era = (day_of_era - day_of_era / 1460 + day_of_era / 36524 - day_of_era / 146096) / 365;
+        int day_of_year = day_of_era - (365 * year_of_era + year_of_era / 4 - year_of_era / 100);
+        int shifted_month = (5 * day_of_year + 2) / 153;
+        int day = day_of_year - (153 * shifted_month + 2) / 5 + 1;
+        int month = shifted_month < 10 ? shifted_month + 3 : shifted_month - 9;
+        int year = (int) (year_of_era + era * 400) + (month <= 2 ? 1 : 0);
+
+        writeDigits(buffer, 0, year, 4);
+        buffer[4] = '-';
+        writeDigits(buffer, 5, month, 2);
+        buffer[7] = '-';
+        writeDigits(buffer, 8, day, 2);
+        buffer[10] = 'T';
+        writeDigits(buffer, 11, seconds_of_day / 3600, 2);
+        buffer[13] = ':';
+        writeDigits(buffer, 14, seconds_of_day / 60 % 60, 2);
+        buffer[16] = ':';
+        writeDigits(buffer, 17, seconds_of_day % 60, 2);
+        buffer[19] = 'Z';
+    }
+
+    private static void writeDigits(char[] buffer, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Formats timestamps for a stream of records, reusing one buffer.
+     *      Records written within the same second share the same String, so a whole mapped
+     *      location costs at most one.
+     */
+    static class ISO8601Formatter {
+        private final char[] buffer = new char[ISO8601_LENGTH];
+        private long cached_second = Long.MIN_VALUE;
+        private String cached;
+
+        /**
+         * @param millis    Milliseconds since the epoch
+         * @return String with format "yyyy-MM-dd'T'HH:mm:ss'Z'"
+         */
+        String format(long millis) {
+            long second = millis >= 0 ? millis / 1000 : (millis - 999) / 1000;
+            if (second != this.cached_second || this.cached == null) {
+                formatISO8601(millis, this.buffer);
+                this.cached = new String(this.buffer);
+                this.cached_second = second;
+            }
+            return this.cached;
+        }
     }
 
     /**
@@ -0,0 +1,133 @@
+package com.tylerlubeck.maraudersmapmultiuser.Models;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.LruCache;
+
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.decode.BaseImageDecoder;
+import com.nostra13.universalimageloader.core.decode.ImageDecodingInfo;
+
+import java.io.IOException;
+
+/**
+ * Decodes floor images straight to the size they are displayed at, in to pooled bitmaps.
+ *
+ * Each image is subsampled by the largest power of two that keeps it at least as big as its
+ * target size, then, from KitKat on, scaled the rest of the way by the decoder itself through
+ * inDensity and inTargetDensity. Earlier versions scale with a second bitmap, so they stop at
+ * the subsampled size. The decoded bitmap is mutable and, where possible, reuses a bitmap from
+ * the BitmapPool.
+ *
+ * Only images requested with {@link #FLOOR_IMAGE} as their extraForDownloader are handled this
+ * way; everything else is decoded exactly as BaseImageDecoder would. The size of each floor
+ * image before decoding is recorded, since marker coordinates are given in those pixels.
+ */
+public class FloorImageDecoder extends BaseImageDecoder {
+    /* Pass as DisplayImageOptions.extraForDownloader to decode an image as a floor */
+    public static final Object FLOOR_IMAGE = new Object();
+
+    final static int MAX_RECORDED_SIZES = 32;
+
+    private static final LruCache<String, ImageSize> source_sizes = new LruCache<String, ImageSize>(MAX_RECORDED_SIZES);
+
+    /* Set while retrying a decode that couldn't reuse a pooled bitmap */
+    private final ThreadLocal<Boolean> skip_pool = new ThreadLocal<Boolean>();
+
+    public FloorImageDecoder(boolean loggingEnabled) {
+        super(loggingEnabled);
+    }
+
+    /**
+     * @param imageUri  The URI the floor image was requested with
+     * @return the size of the image before it was decoded, or null if it hasn't been decoded
+     */
+    public static ImageSize getSourceSize(String imageUri) {
+        return source_sizes.get(imageUri);
+    }
+
+    @Override
+    public Bitmap decode(ImageDecodingInfo decodingInfo) throws IOException {
+        if (decodingInfo.getExtraForDownloader() != FLOOR_IMAGE) {
+            return super.decode(decodingInfo);
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = super.decode(decodingInfo);
+        } catch (IllegalArgumentException e) {
+            /* The decoder refused the pooled bitmap after all */
+            this.skip_pool.set(Boolean.TRUE);
+            try {
+                bitmap = super.decode(decodingInfo);
+            } finally {
+                this.skip_pool.remove();
+            }
+        }
+        if (bitmap != null) {
+            /* Its density is whatever made the scaling come out right; draw it pixel for pixel */
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return bitmap;
+    }
+
+    @Override
+    protected BitmapFactory.Options prepareDecodingOptions(ImageSize imageSize, ImageDecodingInfo decodingInfo) {
+        BitmapFactory.Options options = super.prepareDecodingOptions(imageSize, decodingInfo);
+        if (decodingInfo.getExtraForDownloader() != FLOOR_IMAGE) {
+            return options;
+        }
+        source_sizes.put(decodingInfo.getOriginalImageUri(), imageSize);
+        ImageSize target = decodingInfo.getTargetSize();
+        prepareOptions(options, imageSize.getWidth(), imageSize.getHeight(),
+                       target.getWidth(), target.getHeight(), this.skip_pool.get() == null);
+        return options;
+    }
+
+    /**
+     * Set up options to decode an image straight to the size it will be displayed at
+     * @param options       The options to set up; inPreferredConfig should already be set
+     * @param source_width  The width of the encoded image
+     * @param source_height The height of the encoded image
+     * @param target_width  The width the image has to fit in
+     * @param target_height The height the image has to fit in
+     * @param use_pool      Whether to decode in to a pooled bitmap
+     */
+    public static void prepareOptions(BitmapFactory.Options options, int source_width, int source_height,
+                                      int target_width, int target_height, boolean use_pool) {
+        double scale = Math.min(1.0, Math.min(target_width / (double) source_width,
+                                              target_height / (double) source_height));
+        int sample_size = 1;
+        while (sample_size * 2 * scale <= 1.0) {
+            sample_size *= 2;
+        }
+        int sampled_width = (source_width + sample_size - 1) / sample_size;
+        int sampled_height = (source_height + sample_size - 1) / sample_size;
+        int decoded_width = sampled_width;
+        int decoded_height = sampled_height;
+
+        options.inSampleSize = sample_size;
+        options.inMutable = true;
+        options.inScaled = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            decoded_width = (int) Math.round(source_width * scale);
+            decoded_height = (int) Math.round(source_height * scale);
+            if (decoded_width < sampled_width) {
+                options.inScaled = true;
+                options.inDensity = sampled_width;
+                options.inTargetDensity = decoded_width;
+            }
+        }
+
+        if (! use_pool) {
+            options.inBitmap = null;
+            return;
+        }
+        /* Before KitKat, only unscaled, unsampled decodes can reuse a bitmap */
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && sample_size != 1) {
+            return;
+        }
+        Bitmap.Config config = options.inPreferredConfig == null ? Bitmap.Config.ARGB_8888 : options.inPreferredConfig;
+        options.inBitmap = BitmapPool.getInstance().get(decoded_width, decoded_height, config);
+    }
+}
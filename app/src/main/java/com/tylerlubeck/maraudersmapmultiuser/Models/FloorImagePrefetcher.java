@@ -0,0 +1,118 @@
+package com.tylerlubeck.maraudersmapmultiuser.Models;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.nostra13.universalimageloader.cache.disc.DiskCache;
+import com.nostra13.universalimageloader.core.ImageLoader;
+import com.nostra13.universalimageloader.core.download.BaseImageDownloader;
+import com.nostra13.universalimageloader.core.download.ImageDownloader;
+import com.tylerlubeck.maraudersmapmultiuser.Positioning.KnnPositioningEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Downloads floor images in to the ImageLoader's disk cache ahead of time, so that showing any
+ * floor of a building later on doesn't touch the network.
+ *
+ * Only the encoded images are fetched; nothing is decoded until a floor is shown. Downloads run
+ * one at a time on a low priority thread, images that are already on disk are skipped, and an
+ * image asked for again while it is waiting is only downloaded once.
+ */
+public class FloorImagePrefetcher {
+    private static FloorImagePrefetcher instance;
+
+    private static final ExecutorService prefetch_thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Floor image prefetcher");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final ImageDownloader downloader;
+    /* Images waiting to be downloaded, or being downloaded */
+    private final HashSet<String> pending;
+
+    private FloorImagePrefetcher(Context context) {
+        this.downloader = new BaseImageDownloader(context);
+        this.pending = new HashSet<String>();
+    }
+
+    /**
+     * @param context   Any context; only the application context is held on to
+     * @return the process-wide prefetcher, creating it on first use
+     */
+    public static synchronized FloorImagePrefetcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new FloorImagePrefetcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Download the image of every floor of a building that has been fingerprinted on the device
+     * @param building_name     The name of the building
+     */
+    public void prefetchBuilding(String building_name) {
+        if (building_name == null) {
+            return;
+        }
+        this.prefetch(KnnPositioningEngine.getInstance().getImageUrls(building_name));
+    }
+
+    /**
+     * Download floor images that aren't on disk yet
+     * @param image_urls    The URLs of the floor images, as they will be shown with
+     */
+    public void prefetch(Collection<String> image_urls) {
+        ImageLoader imageLoader = ImageLoader.getInstance();
+        if (! imageLoader.isInited()) {
+            return;
+        }
+        final DiskCache disk_cache = imageLoader.getDiskCache();
+        for (final String image_url : image_urls) {
+            synchronized (this.pending) {
+                if (! this.pending.add(image_url)) {
+                    continue;
+                }
+            }
+            prefetch_thread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    FloorImagePrefetcher.this.download(disk_cache, image_url);
+                }
+            });
+        }
+    }
+
+    private void download(DiskCache disk_cache, String image_url) {
+        try {
+            File cached = disk_cache.get(image_url);
+            if (cached != null && cached.exists()) {
+                return;
+            }
+            InputStream stream = this.downloader.getStream(image_url, null);
+            try {
+                disk_cache.save(image_url, stream, null);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            /* It will be downloaded when the floor is shown instead */
+            Log.e("MARAUDERSMAP", "Couldn't prefetch floor image " + image_url + ": " + e.getMessage());
+        } finally {
+            synchronized (this.pending) {
+                this.pending.remove(image_url);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.tylerlubeck.maraudersmapmultiuser.Models;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+
+/**
+ * A floor map with markers drawn over it.
+ *
+ * The floor bitmap is never modified or copied; it is scaled to the drawable's bounds as it is
+ * drawn, then any TileLayer is drawn over it, and a MarkerSet goes on top. The markers have
+ * their own coordinates, e.g. the pixels of the original floor plan, which are mapped on to the
+ * drawable's bounds.
+ */
+public class FloorMapDrawable extends Drawable {
+    private final Bitmap floor;
+    private final MarkerSet markers;
+    private final int marker_width;
+    private final int marker_height;
+    private final Paint bitmap_paint;
+    private final Paint marker_paint;
+    private TileLayer tile_layer;
+
+    /**
+     * Draws more detail over the floor map, underneath the markers
+     */
+    public interface TileLayer {
+        /**
+         * @param canvas    The canvas, transformed the way the drawable is being drawn
+         * @param bounds    The bounds the floor map is drawn in to
+         */
+        void draw(Canvas canvas, Rect bounds);
+    }
+
+    /**
+     * @param _floor            The floor map, which is never modified, at its intrinsic size
+     * @param _markers          The markers to draw over it
+     * @param _marker_width     The width of the floor in marker coordinates
+     * @param _marker_height    The height of the floor in marker coordinates
+     */
+    public FloorMapDrawable(Bitmap _floor, MarkerSet _markers, int _marker_width, int _marker_height) {
+        this.floor = _floor;
+        this.markers = _markers;
+        this.marker_width = _marker_width;
+        this.marker_height = _marker_height;
+        this.bitmap_paint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+        this.marker_paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    }
+
+    /**
+     * @return the floor map, which is never modified
+     */
+    public Bitmap getBitmap() {
+        return this.floor;
+    }
+
+    /**
+     * @param _tile_layer   Drawn between the floor map and the markers, or null for nothing
+     */
+    public void setTileLayer(TileLayer _tile_layer) {
+        this.tile_layer = _tile_layer;
+        this.invalidateSelf();
+    }
+
+    /**
+     * Convert a region from marker coordinates to the coordinates the drawable is drawn at
+     * @param region    The region to convert, in place
+     */
+    public void mapToBounds(RectF region) {
+        Rect bounds = this.getBounds();
+        float scale_x = bounds.width() / (float) this.marker_width;
+        float scale_y = bounds.height() / (float) this.marker_height;
+        region.set(bounds.left + region.left * scale_x, bounds.top + region.top * scale_y,
+                   bounds.left + region.right * scale_x, bounds.top + region.bottom * scale_y);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Rect bounds = this.getBounds();
+        canvas.drawBitmap(this.floor, null, bounds, this.bitmap_paint);
+        if (this.tile_layer != null) {
+            this.tile_layer.draw(canvas, bounds);
+        }
+        if (this.markers.size() == 0) {
+            return;
+        }
+
+        float scale_x = bounds.width() / (float) this.marker_width;
+        float scale_y = bounds.height() / (float) this.marker_height;
+        int save_count = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        canvas.scale(scale_x, scale_y);
+        this.markers.draw(canvas, this.marker_paint);
+        canvas.restoreToCount(save_count);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return this.floor.getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return this.floor.getHeight();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        this.bitmap_paint.setAlpha(alpha);
+        this.marker_paint.setAlpha(alpha);
+        this.invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        this.bitmap_paint.setColorFilter(colorFilter);
+        this.marker_paint.setColorFilter(colorFilter);
+        this.invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return this.floor.hasAlpha() ? PixelFormat.TRANSLUCENT : PixelFormat.OPAQUE;
+    }
+}
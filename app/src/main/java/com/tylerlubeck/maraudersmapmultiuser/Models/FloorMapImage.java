@@ -2,11 +2,14 @@ package com.tylerlubeck.maraudersmapmultiuser.Models;
 
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.Paint;
-import android.graphics.Color;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
 import android.widget.AdapterView;
@@ -15,45 +18,70 @@ import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.ImageLoader;
 import com.nostra13.universalimageloader.core.assist.FailReason;
+import com.nostra13.universalimageloader.core.assist.ImageScaleType;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.imageaware.ImageViewAware;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingProgressListener;
 import com.tylerlubeck.maraudersmapmultiuser.R;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 
 /**
  * Created by Hunter on 10/11/14.
  *
  */
 public class FloorMapImage implements AdapterView.OnItemSelectedListener {
-    private final int width;
-    private final int height;
-    private int original_width;
-    private int original_height;
-    private Bitmap unmarked_image;
+    private FloorMapDrawable drawable;
+    /* Whether the drawable's bitmap is ours alone, and goes back to the BitmapPool when replaced */
+    private boolean bitmap_pooled;
+    private TiledFloorRenderer tiles;
     private final ImageView image_view;
+    /* In the coordinates of the original floor image, so they survive the image being replaced */
+    private final MarkerSet markers = new MarkerSet();
+    /* The user's own marker, which draw_point_clear moves, or NO_MARKER */
+    private int self_marker_id = NO_MARKER;
+    /* Reused to work out which part of the view a marker change touched */
+    private final Rect dirty = new Rect();
+    private final RectF dirty_in_view = new RectF();
     private final Context context;
 
+    /* Markers are DEFAULT_POINT_RADIUS across on a map DEFAULT_WIDTH wide, and scaled from there */
     private final int DEFAULT_WIDTH = 1200;
-    private final int DEFAULT_HEIGHT = 800;
     private final int DEFAULT_POINT_RADIUS = 20;
+    private final static int NO_MARKER = -1;
+
+    /*
+     * Floor images are decoded to fit the view, and kept in the memory cache so a repeat locate
+     * doesn't decode them again. The memory cache may hand them out again, so they are never pooled.
+     */
+    private static final DisplayImageOptions FLOOR_IMAGE_OPTIONS = new DisplayImageOptions.Builder()
+            .cacheInMemory(true)
+            .cacheOnDisk(true)
+            .imageScaleType(ImageScaleType.IN_SAMPLE_POWER_OF_2)
+            .extraForDownloader(FloorImageDecoder.FLOOR_IMAGE)
+            .build();
 
 
     /**
      * Create a class to represent a FloorMapImage.
      *      This will fetch the correct image from the drawables folder based on the building name and floor number.
-     *      It will scale the image based on a screen size of 1200x800.
-     *      It handles drawing points on the image
+     *      It will decode the image at the size of the view it is shown in.
+     *      It handles drawing points on an overlay above the image, leaving the image itself untouched.
+     *      Shown in a FloorPlanView, it can be zoomed in to the full resolution of the original image
      * @param building_name     The name of the building this image_view represents
      * @param floor_number      The floor of the building this represents
      * @param image_view        The View to put the image on
      * @param context           The context the image_view belongs to
      */
     public FloorMapImage(String building_name, int floor_number, ImageView image_view, Context context){
-        /* TODO: Eventually calculate these based on screen size */
-        this.width = DEFAULT_WIDTH;
-        this.height = DEFAULT_HEIGHT;
         this.image_view = image_view;
         this.context = context;
         this.setImage(building_name, floor_number);
@@ -65,15 +93,25 @@ public class FloorMapImage implements AdapterView.OnItemSelectedListener {
      * @param context
      */
     public FloorMapImage(ImageView image_view, Context context) {
-        this.width = DEFAULT_WIDTH;
-        this.height = DEFAULT_HEIGHT;
         this.image_view = image_view;
         this.context = context;
     }
 
     public void setImageFromUrl(String imageUrl, final int x_coordinate, final int y_coordinate) {
         ImageLoader imageLoader = ImageLoader.getInstance();
-        imageLoader.displayImage(imageUrl, this.image_view, null, new ImageLoadingListener() {
+        final ImageSize target_size = this.getTargetSize();
+        ImageViewAware image_aware = new ImageViewAware(this.image_view) {
+            @Override
+            public int getWidth() {
+                return target_size.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return target_size.getHeight();
+            }
+        };
+        imageLoader.displayImage(imageUrl, image_aware, FLOOR_IMAGE_OPTIONS, new ImageLoadingListener() {
             @Override
             public void onLoadingStarted(String imageUri, View view) {
                 Log.d("MARAUDERSMAP", "STARTED LOADING IMAGE " + imageUri);
@@ -107,7 +145,22 @@ public class FloorMapImage implements AdapterView.OnItemSelectedListener {
                 view.setVisibility(View.VISIBLE);
                 updateBtn.setVisibility(View.VISIBLE);
                 Log.d("MARAUDERSMAP", "FINISHED LOADING IMAGE FROM " + imageUri);
-                FloorMapImage.this.setImageFromBitmap(loadedImage);
+                ImageSize source_size = FloorImageDecoder.getSourceSize(imageUri);
+                if (source_size == null) {
+                    source_size = new ImageSize(loadedImage.getWidth(), loadedImage.getHeight());
+                }
+                final File original = ImageLoader.getInstance().getDiskCache().get(imageUri);
+                TiledFloorRenderer.Source tile_source = null;
+                if (original != null && original.exists()) {
+                    tile_source = new TiledFloorRenderer.Source() {
+                        @Override
+                        public InputStream open() throws IOException {
+                            return new FileInputStream(original);
+                        }
+                    };
+                }
+                FloorMapImage.this.setImageFromBitmap(loadedImage, source_size.getWidth(), source_size.getHeight(),
+                                                      tile_source, false);
                 FloorMapImage.this.draw_point_clear(x_coordinate, y_coordinate);
             }
 
@@ -134,35 +187,149 @@ public class FloorMapImage implements AdapterView.OnItemSelectedListener {
      */
     void setImage(String building_name, int floor_number) {
         String file_path = building_name.toLowerCase().replaceAll(" ", "_").replaceAll("/", "") + String.valueOf(floor_number);
+        final Resources resources = this.context.getResources();
+        final int resource_id = resources.getIdentifier(file_path, "drawable", this.context.getPackageName());
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        BitmapFactory.decodeResource(resources, resource_id, options);
+        int source_width = options.outWidth;
+        int source_height = options.outHeight;
 
-        this.image_view.setImageResource(this.context.getResources().getIdentifier(file_path,
-                "drawable",
-                this.context.getPackageName()));
-        Bitmap Floorbitmap = ((BitmapDrawable) this.image_view.getDrawable()).getBitmap();
-        this.setImageFromBitmap(Floorbitmap);
+        ImageSize target_size = this.getTargetSize();
+        options.inJustDecodeBounds = false;
+        FloorImageDecoder.prepareOptions(options, source_width, source_height,
+                                         target_size.getWidth(), target_size.getHeight(), true);
+        Bitmap floor_bitmap;
+        try {
+            floor_bitmap = BitmapFactory.decodeResource(resources, resource_id, options);
+        } catch (IllegalArgumentException e) {
+            /* The decoder refused the pooled bitmap */
+            FloorImageDecoder.prepareOptions(options, source_width, source_height,
+                                             target_size.getWidth(), target_size.getHeight(), false);
+            floor_bitmap = BitmapFactory.decodeResource(resources, resource_id, options);
+        }
+        if (floor_bitmap == null) {
+            Log.e("MARAUDERSMAP", "FAILED TO DECODE FLOOR " + file_path);
+            return;
+        }
+        floor_bitmap.setDensity(Bitmap.DENSITY_NONE);
+        this.setImageFromBitmap(floor_bitmap, source_width, source_height, new TiledFloorRenderer.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return resources.openRawResource(resource_id);
+            }
+        }, true);
+    }
 
+    /**
+     * @return the size the floor image has to fit in: the space the image_view has been given
+     *              if it has been laid out yet, or the screen if not
+     */
+    private ImageSize getTargetSize() {
+        View parent = (View) this.image_view.getParent();
+        if (parent != null && parent.getWidth() > 0 && parent.getHeight() > 0) {
+            return new ImageSize(parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight(),
+                                 parent.getHeight() - parent.getPaddingTop() - parent.getPaddingBottom());
+        }
+        DisplayMetrics metrics = this.context.getResources().getDisplayMetrics();
+        return new ImageSize(metrics.widthPixels, metrics.heightPixels);
     }
 
-    private void setImageFromBitmap(Bitmap bitmap) {
-        this.original_height = bitmap.getHeight();
-        this.original_width = bitmap.getWidth();
-        this.unmarked_image = Bitmap.createScaledBitmap(bitmap,
-                this.width,
-                this.height,
-                true);
-        this.image_view.setImageBitmap(this.unmarked_image);
+    /**
+     * Show a decoded floor image, and give the one it replaces back to the BitmapPool if it can be.
+     *      If the original image has more detail than the decoded one, zooming in on the
+     *      image_view shows it, tile by tile.
+     * @param bitmap            The floor image, already at the size it will be shown
+     * @param source_width      The width of the image before decoding, which coordinates are in
+     * @param source_height     The height of the image before decoding, which coordinates are in
+     * @param tile_source       Where to read the original image from, or null if it can't be
+     * @param pooled            True if nothing else holds the bitmap, so it can be pooled later
+     */
+    private void setImageFromBitmap(final Bitmap bitmap, int source_width, int source_height,
+                                    TiledFloorRenderer.Source tile_source, boolean pooled) {
+        FloorMapDrawable previous = this.drawable;
+        boolean previous_pooled = this.bitmap_pooled;
+        this.bitmap_pooled = pooled;
+        this.closeTiles();
+
+        this.markers.setRadius(DEFAULT_POINT_RADIUS * source_width / (float) DEFAULT_WIDTH);
+        /* The whole image_view is redrawn for the new drawable anyway */
+        this.markers.takeDirty(this.dirty);
+        this.drawable = new FloorMapDrawable(bitmap, this.markers, source_width, source_height);
+        if (tile_source != null && source_width > bitmap.getWidth()) {
+            this.tiles = new TiledFloorRenderer(tile_source, source_width, source_height,
+                                                new TiledFloorRenderer.Listener() {
+                @Override
+                public void onTileLoaded() {
+                    FloorMapImage.this.image_view.invalidate();
+                }
+            });
+            final TiledFloorRenderer renderer = this.tiles;
+            this.drawable.setTileLayer(new FloorMapDrawable.TileLayer() {
+                @Override
+                public void draw(Canvas canvas, Rect bounds) {
+                    ImageView view = FloorMapImage.this.image_view;
+                    renderer.draw(canvas, bounds, view.getImageMatrix(),
+                                  view.getWidth() - view.getPaddingLeft() - view.getPaddingRight(),
+                                  view.getHeight() - view.getPaddingTop() - view.getPaddingBottom(),
+                                  bitmap.getWidth());
+                }
+            });
+        }
+        this.image_view.setImageDrawable(this.drawable);
+        if (previous != null && previous_pooled && previous.getBitmap() != bitmap) {
+            BitmapPool.getInstance().put(previous.getBitmap());
+        }
     }
 
     /**
-     *  Draws a point on the image_view at (x, y)
-     *  Clears all other points drawn on the image_view
-     * @param x     The x coordinate to draw at
-     * @param y     The y coordinate to draw at
+     * Stop showing the floor image, and give it back to the BitmapPool for the next one if it can be
+     */
+    public void release() {
+        this.closeTiles();
+        if (this.drawable == null) {
+            return;
+        }
+        this.image_view.setImageDrawable(null);
+        if (this.bitmap_pooled) {
+            BitmapPool.getInstance().put(this.drawable.getBitmap());
+        }
+        this.drawable = null;
+    }
+
+    private void closeTiles() {
+        if (this.tiles != null) {
+            this.tiles.close();
+            this.tiles = null;
+        }
+    }
+
+    /**
+     *  Draws the user's point on the image_view at (x, y)
+     *  Moves the point drawn by the last call, rather than adding another; other markers,
+     *  e.g. friends', are left alone
+     * @param x     The x coordinate to draw at, or negative to remove the user's point
+     * @param y     The y coordinate to draw at, or negative to remove the user's point
      */
     void draw_point_clear(int x, int y){
-        Bitmap bitmap = this.unmarked_image.copy(this.unmarked_image.getConfig(),
-                                                true);
-        this.draw_point(x, y, bitmap);
+        if (x < 0 || y < 0) {
+            this.removeSelfMarker();
+        } else if (this.self_marker_id == NO_MARKER) {
+            this.self_marker_id = this.addMarker(x, y, Color.BLUE);
+        } else {
+            this.moveMarker(this.self_marker_id, x, y);
+        }
+    }
+
+    /**
+     * Remove the point draw_point_clear drew, if there is one
+     */
+    private void removeSelfMarker() {
+        if (this.self_marker_id != NO_MARKER) {
+            this.removeMarker(this.self_marker_id);
+        }
     }
 
     /**
@@ -172,26 +339,86 @@ public class FloorMapImage implements AdapterView.OnItemSelectedListener {
      * @param y     The y coordinate to draw at
      */
     void draw_point_noclear(int x, int y){
-        Bitmap bitmap = ((BitmapDrawable)this.image_view.getDrawable()).getBitmap();
-        this.draw_point(x, y, bitmap);
+        if (x < 0 || y < 0) {
+            return;
+        }
+        this.addMarker(x, y, Color.BLUE);
+    }
+
+    /**
+     * Add a marker, e.g. for a friend. Markers can be added before the image has loaded.
+     * @param x         The x coordinate, in pixels of the original floor image
+     * @param y         The y coordinate, in pixels of the original floor image
+     * @param color     The color of the marker
+     * @return the id to move or remove the marker with
+     */
+    public int addMarker(int x, int y, int color) {
+        int id = this.markers.add(x, y, color);
+        this.invalidate_dirty();
+        return id;
+    }
+
+    /**
+     * Move a marker, redrawing only the parts of the image_view it left and arrived at
+     * @param id    The id addMarker returned
+     * @param x     The new x coordinate, in pixels of the original floor image
+     * @param y     The new y coordinate, in pixels of the original floor image
+     */
+    public void moveMarker(int id, int x, int y) {
+        this.markers.move(id, x, y);
+        this.invalidate_dirty();
+    }
+
+    /**
+     * @param id    The id addMarker returned
+     */
+    public void removeMarker(int id) {
+        this.markers.remove(id);
+        if (id == this.self_marker_id) {
+            this.self_marker_id = NO_MARKER;
+        }
+        this.invalidate_dirty();
+    }
+
+    /**
+     * Remove every marker, the user's included
+     */
+    public void clearMarkers() {
+        this.markers.clear();
+        this.self_marker_id = NO_MARKER;
+        this.invalidate_dirty();
+    }
+
+    /**
+     * Get the MarkerSet to change many markers at once, e.g. every friend's position in a group.
+     *      Call invalidateMarkers() afterwards to redraw everything that changed in one pass.
+     *      Leave the user's marker alone, and use clearMarkers() rather than clear().
+     * @return the markers drawn over the floor image
+     */
+    public MarkerSet getMarkers() {
+        return this.markers;
+    }
+
+    /**
+     * Redraw the parts of the image_view touched by changes made through getMarkers()
+     */
+    public void invalidateMarkers() {
+        this.invalidate_dirty();
     }
 
     /**
-     * Draws a point on the given bitmap, and sets the image_view to display the updated bitmap
-     * @param x         The x coordinate to draw at
-     * @param y         The y coordinate to draw at
-     * @param bitmap    The bitmap to draw on
+     * Invalidates the region of the image_view covering every marker change since the last call
      */
-    private void draw_point(int x, int y, Bitmap bitmap) {
-        if ( x >= 0 && y >= 0) {
-            float scaled_x = x * (float) this.width / (float) this.original_width;
-            float scaled_y = y * (float) this.height / (float) this.original_height;
-            Paint paint = new Paint();
-            paint.setColor(Color.BLUE);
-            Canvas canvas = new Canvas(bitmap);
-            canvas.drawCircle(scaled_x, scaled_y, DEFAULT_POINT_RADIUS, paint);
-            this.image_view.setImageBitmap(bitmap);
+    private void invalidate_dirty() {
+        if (! this.markers.takeDirty(this.dirty) || this.drawable == null) {
+            return;
         }
+        this.dirty_in_view.set(this.dirty);
+        this.drawable.mapToBounds(this.dirty_in_view);
+        this.image_view.getImageMatrix().mapRect(this.dirty_in_view);
+        this.dirty_in_view.offset(this.image_view.getPaddingLeft(), this.image_view.getPaddingTop());
+        this.dirty_in_view.roundOut(this.dirty);
+        this.image_view.invalidate(this.dirty);
     }
 
     @Override
@@ -202,7 +429,6 @@ public class FloorMapImage implements AdapterView.OnItemSelectedListener {
 
     @Override
     public void onNothingSelected(AdapterView<?> adapterView) {
-        Bitmap bitmap = this.unmarked_image.copy(this.unmarked_image.getConfig(), true);
-        this.image_view.setImageBitmap(bitmap);
+        this.removeSelfMarker();
     }
 }
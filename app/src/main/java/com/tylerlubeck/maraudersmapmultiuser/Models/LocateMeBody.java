@@ -17,4 +17,8 @@ public class LocateMeBody {
     public LocateMeBody(List<AccessPoint> accessPoints) {
         this.access_points = accessPoints;
     }
+
+    public List<AccessPoint> getAccessPoints() {
+        return this.access_points;
+    }
 }
@@ -0,0 +1,291 @@
+package com.tylerlubeck.maraudersmapmultiuser.Models;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Any number of colored, round markers on a floor, e.g. the user and every friend in a group.
+ *
+ * Markers are kept in flat arrays and identified by the id add() returns, which stays valid
+ * until the marker is removed or the set is cleared. Ids are reused, so an id must not be used
+ * after its marker has gone. Every change grows a dirty region covering what it touched, so
+ * a whole frame's worth of changes can be invalidated at once.
+ *
+ * Drawing skips markers outside the canvas's clip, and draws all the markers of each color in
+ * a single drawPoints call.
+ */
+public class MarkerSet {
+    final static int INITIAL_CAPACITY = 8;
+
+    /* x, y pairs, packed in to the first size slots */
+    private float[] positions;
+    private int[] colors;
+    /* The id of the marker in each slot */
+    private int[] slot_ids;
+    /* The slot of each id, or -1 if the id is free */
+    private int[] id_slots;
+    private int size;
+
+    /* Ids freed by remove() and clear(), reused before new ones */
+    private int[] free_ids;
+    private int num_free_ids;
+    private int next_id;
+
+    private float radius;
+    /* The region changed since the last takeDirty(), empty when left >= right */
+    private int dirty_left;
+    private int dirty_top;
+    private int dirty_right;
+    private int dirty_bottom;
+
+    /* Reused between draws */
+    private float[] batch;
+    private int[] batch_colors;
+    private final Rect visible;
+
+    public MarkerSet() {
+        this.positions = new float[2 * INITIAL_CAPACITY];
+        this.colors = new int[INITIAL_CAPACITY];
+        this.slot_ids = new int[INITIAL_CAPACITY];
+        this.id_slots = new int[INITIAL_CAPACITY];
+        this.free_ids = new int[INITIAL_CAPACITY];
+        this.batch = new float[2 * INITIAL_CAPACITY];
+        this.batch_colors = new int[INITIAL_CAPACITY];
+        this.visible = new Rect();
+    }
+
+    /**
+     * @return the number of markers
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param _radius   The radius of every marker
+     */
+    public void setRadius(float _radius) {
+        this.unionAll();
+        this.radius = _radius;
+        this.unionAll();
+    }
+
+    /**
+     * Add a marker
+     * @param x         The x coordinate of its center
+     * @param y         The y coordinate of its center
+     * @param color     Its color
+     * @return the id of the new marker
+     */
+    public int add(float x, float y, int color) {
+        if (this.size == this.colors.length) {
+            this.grow();
+        }
+        int id;
+        if (this.num_free_ids > 0) {
+            id = this.free_ids[--this.num_free_ids];
+        } else {
+            id = this.next_id++;
+            if (id == this.id_slots.length) {
+                this.id_slots = copyOf(this.id_slots, id * 2);
+            }
+        }
+
+        int slot = this.size++;
+        this.positions[2 * slot] = x;
+        this.positions[2 * slot + 1] = y;
+        this.colors[slot] = color;
+        this.slot_ids[slot] = id;
+        this.id_slots[id] = slot;
+        this.unionMarker(slot);
+        return id;
+    }
+
+    /**
+     * Move a marker
+     * @param id    The id add() returned
+     * @param x     The x coordinate of its new center
+     * @param y     The y coordinate of its new center
+     */
+    public void move(int id, float x, float y) {
+        int slot = this.getSlot(id);
+        this.unionMarker(slot);
+        this.positions[2 * slot] = x;
+        this.positions[2 * slot + 1] = y;
+        this.unionMarker(slot);
+    }
+
+    /**
+     * Remove a marker. Its id may be handed out again by add().
+     * @param id    The id add() returned
+     */
+    public void remove(int id) {
+        int slot = this.getSlot(id);
+        this.unionMarker(slot);
+
+        /* Fill the hole with the last marker, so the markers stay packed */
+        int last = --this.size;
+        if (slot != last) {
+            this.positions[2 * slot] = this.positions[2 * last];
+            this.positions[2 * slot + 1] = this.positions[2 * last + 1];
+            this.colors[slot] = this.colors[last];
+            this.slot_ids[slot] = this.slot_ids[last];
+            this.id_slots[this.slot_ids[slot]] = slot;
+        }
+        this.id_slots[id] = -1;
+        this.freeId(id);
+    }
+
+    /**
+     * Remove every marker. Their ids may be handed out again by add().
+     */
+    public void clear() {
+        this.unionAll();
+        for (int slot = 0; slot < this.size; slot++) {
+            int id = this.slot_ids[slot];
+            this.id_slots[id] = -1;
+            this.freeId(id);
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Take the region touched since the last call
+     * @param out   Set to the region, in marker coordinates
+     * @return false if nothing has changed
+     */
+    public boolean takeDirty(Rect out) {
+        if (this.dirty_left >= this.dirty_right || this.dirty_top >= this.dirty_bottom) {
+            return false;
+        }
+        out.left = this.dirty_left;
+        out.top = this.dirty_top;
+        out.right = this.dirty_right;
+        out.bottom = this.dirty_bottom;
+        this.dirty_left = this.dirty_top = this.dirty_right = this.dirty_bottom = 0;
+        return true;
+    }
+
+    /**
+     * Draw the markers that fall within the canvas's clip
+     * @param canvas    A canvas transformed to marker coordinates
+     * @param paint     The paint to draw with; its color is changed, but its alpha is kept
+     */
+    public void draw(Canvas canvas, Paint paint) {
+        if (this.size == 0 || ! canvas.getClipBounds(this.visible)) {
+            return;
+        }
+        float left = this.visible.left - this.radius;
+        float top = this.visible.top - this.radius;
+        float right = this.visible.right + this.radius;
+        float bottom = this.visible.bottom + this.radius;
+
+        int alpha = paint.getAlpha();
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setStrokeWidth(2 * this.radius);
+
+        /* Find the colors of the visible markers */
+        int num_colors = 0;
+        for (int slot = 0; slot < this.size; slot++) {
+            float x = this.positions[2 * slot];
+            float y = this.positions[2 * slot + 1];
+            if (x < left || x > right || y < top || y > bottom) {
+                continue;
+            }
+            int color = this.colors[slot];
+            int known = 0;
+            while (known < num_colors && this.batch_colors[known] != color) {
+                known++;
+            }
+            if (known == num_colors) {
+                if (num_colors == this.batch_colors.length) {
+                    this.batch_colors = copyOf(this.batch_colors, num_colors * 2);
+                }
+                this.batch_colors[num_colors++] = color;
+            }
+        }
+
+        /* One drawPoints per color; a round cap as wide as the marker makes each point a circle */
+        for (int i = 0; i < num_colors; i++) {
+            int color = this.batch_colors[i];
+            int count = 0;
+            for (int slot = 0; slot < this.size; slot++) {
+                float x = this.positions[2 * slot];
+                float y = this.positions[2 * slot + 1];
+                if (this.colors[slot] != color || x < left || x > right || y < top || y > bottom) {
+                    continue;
+                }
+                this.batch[count++] = x;
+                this.batch[count++] = y;
+            }
+            paint.setColor(color);
+            paint.setAlpha(alpha * (color >>> 24) / 255);
+            canvas.drawPoints(this.batch, 0, count, paint);
+        }
+        paint.setAlpha(alpha);
+    }
+
+    private int getSlot(int id) {
+        int slot = id >= 0 && id < this.next_id ? this.id_slots[id] : -1;
+        if (slot < 0) {
+            throw new IllegalArgumentException("No marker with id " + id);
+        }
+        return slot;
+    }
+
+    private void freeId(int id) {
+        if (this.num_free_ids == this.free_ids.length) {
+            this.free_ids = copyOf(this.free_ids, this.free_ids.length * 2);
+        }
+        this.free_ids[this.num_free_ids++] = id;
+    }
+
+    private void grow() {
+        int capacity = this.colors.length * 2;
+        this.positions = copyOf(this.positions, 2 * capacity);
+        this.colors = copyOf(this.colors, capacity);
+        this.slot_ids = copyOf(this.slot_ids, capacity);
+        this.batch = new float[2 * capacity];
+    }
+
+    private void unionAll() {
+        for (int slot = 0; slot < this.size; slot++) {
+            this.unionMarker(slot);
+        }
+    }
+
+    private void unionMarker(int slot) {
+        float x = this.positions[2 * slot];
+        float y = this.positions[2 * slot + 1];
+        /* One pixel of slack for anti-aliasing */
+        int left = (int) Math.floor(x - this.radius) - 1;
+        int top = (int) Math.floor(y - this.radius) - 1;
+        int right = (int) Math.ceil(x + this.radius) + 1;
+        int bottom = (int) Math.ceil(y + this.radius) + 1;
+        if (this.dirty_left >= this.dirty_right || this.dirty_top >= this.dirty_bottom) {
+            this.dirty_left = left;
+            this.dirty_top = top;
+            this.dirty_right = right;
+            this.dirty_bottom = bottom;
+        } else {
+            this.dirty_left = Math.min(this.dirty_left, left);
+            this.dirty_top = Math.min(this.dirty_top, top);
+            this.dirty_right = Math.max(this.dirty_right, right);
+            this.dirty_bottom = Math.max(this.dirty_bottom, bottom);
+        }
+    }
+
+    private static float[] copyOf(float[] array, int length) {
+        float[] copy = new float[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+}
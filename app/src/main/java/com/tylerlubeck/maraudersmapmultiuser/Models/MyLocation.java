@@ -32,6 +32,10 @@ public class MyLocation {
         return y_coordinate;
     }
 
+    public String getBuildingName() {
+        return this.building_name;
+    }
+
     public String getFloorName() {
         return String.format("%s Floor %d", building_name, floor_number);
     }
@@ -19,4 +19,16 @@ public class RespondToRequestBody {
     public void setAccessPoints(List<AccessPoint> accessPoints) {
         this.access_points = accessPoints;
     }
+
+    public boolean isAllowRequest() {
+        return this.allow_request;
+    }
+
+    public int getRequestorId() {
+        return this.requestor_id;
+    }
+
+    public List<AccessPoint> getAccessPoints() {
+        return this.access_points;
+    }
 }
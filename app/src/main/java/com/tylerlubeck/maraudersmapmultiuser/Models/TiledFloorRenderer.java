@@ -0,0 +1,277 @@
+package com.tylerlubeck.maraudersmapmultiuser.Models;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Draws the full resolution floor plan, one tile at a time, over the downscaled floor image
+ * once the user has zoomed in past what the downscaled image can show.
+ *
+ * Tiles are TILE_SIZE pixels square after subsampling, and are decoded from the original image
+ * with a BitmapRegionDecoder on a background thread. Only tiles that are visible at the current
+ * zoom level are decoded; any that have scrolled out of view before their turn comes are skipped.
+ * Decoded tiles are kept in an LRU cache bounded in bytes. Until a tile is ready, the downscaled
+ * image underneath shows through.
+ *
+ * Everything except decoding happens on the main thread.
+ */
+public class TiledFloorRenderer {
+    final static int TILE_SIZE = 256;
+    /* A fraction of the heap, so that a big floor plan can't run the app out of memory */
+    final static int CACHE_FRACTION_OF_HEAP = 8;
+
+    public interface Listener {
+        /**
+         * A tile has been decoded, and the view should be redrawn
+         */
+        void onTileLoaded();
+    }
+
+    /**
+     * Opens the image to decode tiles from, on the decoding thread
+     */
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private static final ExecutorService decoder_thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Floor tile decoder");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final int source_width;
+    private final int source_height;
+    private final Listener listener;
+    private final Handler handler;
+    private final LruCache<Long, Bitmap> tiles;
+    private final Paint paint;
+
+    /* Tiles waiting to be decoded, or being decoded; main thread only */
+    private final HashSet<Long> pending;
+    /* Tiles that were visible at the last draw; decoding checks it, so it is locked */
+    private final HashSet<Long> wanted;
+
+    private final float[] matrix_values = new float[9];
+    private final Matrix inverse = new Matrix();
+    private final RectF visible = new RectF();
+    private final Rect tile_source = new Rect();
+    private final RectF tile_destination = new RectF();
+
+    private volatile BitmapRegionDecoder decoder;
+    private volatile boolean closed;
+
+    /**
+     * Start opening the image in the background
+     * @param source            Where to read the original image from
+     * @param _source_width     The width of the original image
+     * @param _source_height    The height of the original image
+     * @param _listener         Told when a tile is ready to be drawn
+     */
+    public TiledFloorRenderer(final Source source, int _source_width, int _source_height, Listener _listener) {
+        this.source_width = _source_width;
+        this.source_height = _source_height;
+        this.listener = _listener;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.pending = new HashSet<Long>();
+        this.wanted = new HashSet<Long>();
+        this.paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        int cache_bytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / CACHE_FRACTION_OF_HEAP);
+        this.tiles = new LruCache<Long, Bitmap>(cache_bytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap tile) {
+                return tile.getRowBytes() * tile.getHeight();
+            }
+        };
+
+        decoder_thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                TiledFloorRenderer.this.openDecoder(source);
+            }
+        });
+    }
+
+    private void openDecoder(Source source) {
+        if (this.closed) {
+            return;
+        }
+        try {
+            InputStream stream = source.open();
+            try {
+                this.decoder = BitmapRegionDecoder.newInstance(stream, false);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            /* Not a format that can be decoded by region; the downscaled image will have to do */
+            Log.e("MARAUDERSMAP", "Can't decode floor plan tiles: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Draw whichever visible tiles are ready, and queue the rest for decoding.
+     *      The canvas must already be transformed the way the drawable is drawn.
+     * @param canvas            The canvas the floor image is being drawn on
+     * @param bounds            The bounds the floor image is drawn in to
+     * @param image_matrix      The matrix from the drawable's coordinates to the view's content
+     * @param view_width        The width of the view's content area
+     * @param view_height       The height of the view's content area
+     * @param decoded_width     The width of the downscaled floor image
+     */
+    public void draw(Canvas canvas, Rect bounds, Matrix image_matrix,
+                     int view_width, int view_height, int decoded_width) {
+        if (this.decoder == null || bounds.isEmpty()) {
+            return;
+        }
+
+        /* How many screen pixels each source pixel covers */
+        image_matrix.getValues(this.matrix_values);
+        float bounds_per_source = bounds.width() / (float) this.source_width;
+        float screen_per_source = this.matrix_values[Matrix.MSCALE_X] * bounds_per_source;
+        if (screen_per_source <= decoded_width / (float) this.source_width) {
+            /* The downscaled image already has all the detail that fits on the screen */
+            synchronized (this.wanted) {
+                this.wanted.clear();
+            }
+            return;
+        }
+        int sample_size = 1;
+        while (sample_size * 2 * screen_per_source <= 1.0f) {
+            sample_size *= 2;
+        }
+
+        /* The part of the source image that is on screen */
+        if (! image_matrix.invert(this.inverse)) {
+            return;
+        }
+        this.visible.set(0, 0, view_width, view_height);
+        this.inverse.mapRect(this.visible);
+        this.visible.offset(-bounds.left, -bounds.top);
+        float bounds_per_source_y = bounds.height() / (float) this.source_height;
+        int left = (int) Math.max(0, this.visible.left / bounds_per_source);
+        int top = (int) Math.max(0, this.visible.top / bounds_per_source_y);
+        int right = (int) Math.min(this.source_width, Math.ceil(this.visible.right / bounds_per_source));
+        int bottom = (int) Math.min(this.source_height, Math.ceil(this.visible.bottom / bounds_per_source_y));
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        int tile_span = TILE_SIZE * sample_size;
+        synchronized (this.wanted) {
+            this.wanted.clear();
+            for (int row = top / tile_span; row * tile_span < bottom; row++) {
+                for (int column = left / tile_span; column * tile_span < right; column++) {
+                    long key = tileKey(sample_size, column, row);
+                    Bitmap tile = this.tiles.get(key);
+                    this.setTileSource(column, row, tile_span);
+                    if (tile == null) {
+                        this.wanted.add(key);
+                        this.requestTile(key, sample_size, new Rect(this.tile_source));
+                        continue;
+                    }
+                    this.tile_destination.set(bounds.left + this.tile_source.left * bounds_per_source,
+                                              bounds.top + this.tile_source.top * bounds_per_source_y,
+                                              bounds.left + this.tile_source.right * bounds_per_source,
+                                              bounds.top + this.tile_source.bottom * bounds_per_source_y);
+                    canvas.drawBitmap(tile, null, this.tile_destination, this.paint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop decoding, and drop every tile
+     */
+    public void close() {
+        this.closed = true;
+        this.tiles.evictAll();
+        synchronized (this.wanted) {
+            this.wanted.clear();
+        }
+        decoder_thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                BitmapRegionDecoder open_decoder = TiledFloorRenderer.this.decoder;
+                if (open_decoder != null) {
+                    open_decoder.recycle();
+                    TiledFloorRenderer.this.decoder = null;
+                }
+            }
+        });
+    }
+
+    private void setTileSource(int column, int row, int tile_span) {
+        this.tile_source.set(column * tile_span, row * tile_span,
+                             Math.min(this.source_width, (column + 1) * tile_span),
+                             Math.min(this.source_height, (row + 1) * tile_span));
+    }
+
+    private void requestTile(final long key, final int sample_size, final Rect region) {
+        if (! this.pending.add(key)) {
+            return;
+        }
+        decoder_thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap tile = TiledFloorRenderer.this.decodeTile(key, sample_size, region);
+                TiledFloorRenderer.this.handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        TiledFloorRenderer.this.pending.remove(key);
+                        if (tile != null && ! TiledFloorRenderer.this.closed) {
+                            TiledFloorRenderer.this.tiles.put(key, tile);
+                            TiledFloorRenderer.this.listener.onTileLoaded();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private Bitmap decodeTile(long key, int sample_size, Rect region) {
+        BitmapRegionDecoder open_decoder = this.decoder;
+        if (this.closed || open_decoder == null) {
+            return null;
+        }
+        /* Skip tiles that were scrolled or zoomed away from while they waited */
+        synchronized (this.wanted) {
+            if (! this.wanted.contains(key)) {
+                return null;
+            }
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sample_size;
+        try {
+            return open_decoder.decodeRegion(region, options);
+        } catch (IllegalArgumentException e) {
+            /* The region is outside the image */
+            return null;
+        }
+    }
+
+    private static long tileKey(int sample_size, int column, int row) {
+        return ((long) Integer.numberOfTrailingZeros(sample_size) << 56) | ((long) column << 28) | row;
+    }
+}
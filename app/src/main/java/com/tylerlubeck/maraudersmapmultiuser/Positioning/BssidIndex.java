@@ -0,0 +1,159 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+import com.tylerlubeck.maraudersmapmultiuser.BssidTable;
+import com.tylerlubeck.maraudersmapmultiuser.MacAddresses;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An inverted index from each BSSID to the mapped locations it was seen at.
+ *
+ * Rather than comparing a query against every location on campus, only the locations that share
+ * at least MIN_SHARED_ACCESS_POINTS of the query's QUERY_ACCESS_POINTS strongest access points
+ * are considered. Locations are identified by an index in to the index's own list, which can be
+ * turned back in to a floor and location with {@link #getFloor(int)} and {@link #getLocation(int)}.
+ */
+public class BssidIndex {
+    final static int QUERY_ACCESS_POINTS = 8;
+    final static int MIN_SHARED_ACCESS_POINTS = 2;
+
+    private final BssidTable<Postings> postings;
+    private final ArrayList<FingerprintSet> entry_floors;
+    private final ArrayList<Integer> entry_locations;
+    private int[] shared_counts;
+
+    public BssidIndex() {
+        this.postings = new BssidTable<Postings>(1024);
+        this.entry_floors = new ArrayList<FingerprintSet>();
+        this.entry_locations = new ArrayList<Integer>();
+        this.shared_counts = new int[0];
+    }
+
+    /**
+     * Index every location on a floor
+     * @param floor     The fingerprints of the floor
+     */
+    public void addFloor(FingerprintSet floor) {
+        for (int location = 0; location < floor.getLocationCount(); location++) {
+            int entry = this.entry_floors.size();
+            this.entry_floors.add(floor);
+            this.entry_locations.add(location);
+
+            int count = floor.getAccessPointCount(location);
+            for (int i = 0; i < count; i++) {
+                long bssid = floor.getBssid(location, i);
+                Postings entries = this.postings.get(bssid);
+                if (entries == null) {
+                    entries = new Postings();
+                    this.postings.put(bssid, entries);
+                }
+                entries.add(entry);
+            }
+        }
+        this.shared_counts = new int[this.entry_floors.size()];
+    }
+
+    /**
+     * @return the number of indexed locations
+     */
+    public int size() {
+        return this.entry_floors.size();
+    }
+
+    /**
+     * @param entry     An entry returned by {@link #findCandidates(List)}
+     * @return the floor the entry is on
+     */
+    public FingerprintSet getFloor(int entry) {
+        return this.entry_floors.get(entry);
+    }
+
+    /**
+     * @param entry     An entry returned by {@link #findCandidates(List)}
+     * @return the index of the entry's location within its floor
+     */
+    public int getLocation(int entry) {
+        return this.entry_locations.get(entry);
+    }
+
+    /**
+     * Find the locations worth comparing a query against.
+     *      If no location shares enough of the strongest access points, every location sharing
+     *      at least one of them is returned instead.
+     * @param accessPoints  The access points seen by the user
+     * @return the entries of the candidate locations
+     */
+    public int[] findCandidates(List<AccessPoint> accessPoints) {
+        ArrayList<AccessPoint> strongest = new ArrayList<AccessPoint>(accessPoints);
+        Collections.sort(strongest, Collections.reverseOrder());
+        int num_query = Math.min(QUERY_ACCESS_POINTS, strongest.size());
+
+        int num_touched = 0;
+        int[] touched = new int[this.shared_counts.length];
+        for (int i = 0; i < num_query; i++) {
+            long bssid = strongest.get(i).getBssid();
+            if (bssid == MacAddresses.INVALID) {
+                continue;
+            }
+            Postings entries = this.postings.get(bssid);
+            if (entries == null) {
+                continue;
+            }
+            for (int j = 0; j < entries.size; j++) {
+                int entry = entries.entries[j];
+                if (this.shared_counts[entry] == 0) {
+                    touched[num_touched++] = entry;
+                }
+                this.shared_counts[entry]++;
+            }
+        }
+
+        int min_shared = Math.min(MIN_SHARED_ACCESS_POINTS, num_query);
+        int num_candidates = 0;
+        for (int i = 0; i < num_touched; i++) {
+            if (this.shared_counts[touched[i]] >= min_shared) {
+                num_candidates++;
+            }
+        }
+
+        int[] candidates;
+        if (num_candidates == 0) {
+            candidates = new int[num_touched];
+            System.arraycopy(touched, 0, candidates, 0, num_touched);
+        } else {
+            candidates = new int[num_candidates];
+            int next = 0;
+            for (int i = 0; i < num_touched; i++) {
+                if (this.shared_counts[touched[i]] >= min_shared) {
+                    candidates[next++] = touched[i];
+                }
+            }
+        }
+
+        /* Reset only the counts we used, ready for the next query */
+        for (int i = 0; i < num_touched; i++) {
+            this.shared_counts[touched[i]] = 0;
+        }
+        return candidates;
+    }
+
+    /**
+     * A growable list of the entries a BSSID was seen at
+     */
+    private static class Postings {
+        int[] entries = new int[4];
+        int size;
+
+        void add(int entry) {
+            if (this.size == this.entries.length) {
+                int[] grown = new int[this.size * 2];
+                System.arraycopy(this.entries, 0, grown, 0, this.size);
+                this.entries = grown;
+            }
+            this.entries[this.size++] = entry;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+import android.util.Log;
+
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.MyLocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Fills the on-device fingerprint stores from the locates the server answers.
+ *
+ * Every fingerprint the server places is added to the FingerprintStore of the floor it was placed
+ * on, at the coordinates it was placed at, and the KnnPositioningEngine is reloaded. The next
+ * locate in a place the device has been before can then be estimated on the device straight away,
+ * and without a connection.
+ *
+ * The coordinates are the server's estimate, not a surveyed position, so each floor keeps only the
+ * most recent MAX_LOCATIONS_PER_FLOOR of them.
+ */
+public class FingerprintRecorder {
+    final static int MAX_LOCATIONS_PER_FLOOR = 500;
+
+    private static final ExecutorService record_thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Fingerprint recorder");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final File directory;
+
+    /**
+     * @param _directory    The directory holding one FingerprintStore per floor
+     */
+    public FingerprintRecorder(File _directory) {
+        this.directory = _directory;
+    }
+
+    /**
+     * Add a located fingerprint to its floor's store, in the background
+     * @param location      Where the server placed the fingerprint
+     * @param accessPoints  The access points that were located
+     */
+    public void record(final MyLocation location, List<AccessPoint> accessPoints) {
+        if (location == null || accessPoints == null || accessPoints.isEmpty()
+                || location.getBuildingName() == null || location.getImageUrl() == null) {
+            return;
+        }
+        final ArrayList<AccessPoint> copy = new ArrayList<AccessPoint>(accessPoints);
+        record_thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                FingerprintRecorder.this.append(location, copy);
+            }
+        });
+    }
+
+    private void append(MyLocation location, List<AccessPoint> accessPoints) {
+        if (! this.directory.isDirectory() && ! this.directory.mkdirs()) {
+            Log.e("MARAUDERSMAP", "Couldn't create " + this.directory);
+            return;
+        }
+        File file = new File(this.directory, storeName(location.getBuildingName(), location.getFloorNumber()));
+        try {
+            FingerprintStore.append(file, location.getBuildingName(), location.getFloorNumber(),
+                                    location.getImageUrl(), location.getXCoordinate(), location.getYCoordinate(),
+                                    accessPoints, MAX_LOCATIONS_PER_FLOOR);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        KnnPositioningEngine.getInstance().loadFloors(this.directory);
+    }
+
+    /**
+     * @param building_name     The name of the building
+     * @param floor_number      The floor number
+     * @return the file name of the floor's store
+     */
+    static String storeName(String building_name, int floor_number) {
+        return building_name.toLowerCase().replaceAll("[^a-z0-9]+", "_") + "_" + floor_number
+                + FingerprintStore.FILE_EXTENSION;
+    }
+}
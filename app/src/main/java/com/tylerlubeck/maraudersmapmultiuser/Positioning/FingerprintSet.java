@@ -0,0 +1,63 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+/**
+ * The mapped fingerprints for every location on a single floor.
+ *
+ * Each location has a position on the floor image and the average signal strength of every
+ * access point seen there. Access points are addressed by index, so that implementations can
+ * keep them in flat arrays or buffers instead of one object per access point.
+ */
+public interface FingerprintSet {
+
+    /**
+     * @return the name of the building this floor is in
+     */
+    String getBuildingName();
+
+    /**
+     * @return the floor number
+     */
+    int getFloorNumber();
+
+    /**
+     * @return the URL of the floor image the coordinates refer to
+     */
+    String getImageUrl();
+
+    /**
+     * @return the number of mapped locations on the floor
+     */
+    int getLocationCount();
+
+    /**
+     * @param location  The index of the location
+     * @return the x coordinate of the location on the floor image
+     */
+    int getX(int location);
+
+    /**
+     * @param location  The index of the location
+     * @return the y coordinate of the location on the floor image
+     */
+    int getY(int location);
+
+    /**
+     * @param location  The index of the location
+     * @return the number of access points seen at the location
+     */
+    int getAccessPointCount(int location);
+
+    /**
+     * @param location      The index of the location
+     * @param access_point  The index of the access point within the location
+     * @return the packed BSSID of the access point
+     */
+    long getBssid(int location, int access_point);
+
+    /**
+     * @param location      The index of the location
+     * @param access_point  The index of the access point within the location
+     * @return the average RSS of the access point at the location, in dBm
+     */
+    double getSignalStrength(int location, int access_point);
+}
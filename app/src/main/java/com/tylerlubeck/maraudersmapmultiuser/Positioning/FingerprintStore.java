@@ -0,0 +1,440 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+import com.tylerlubeck.maraudersmapmultiuser.MacAddresses;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.Location;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A floor's fingerprints, stored in a compact binary file and read through a read-only
+ * memory map. Opening a store only reads the header and the location offsets; the access points
+ * themselves are read straight out of the mapped file when they are needed, so a whole building
+ * can be opened without parsing anything or growing the heap.
+ *
+ * File layout (big endian):
+ * <pre>
+ *     int      MAGIC
+ *     byte     VERSION
+ *     string   building name
+ *     int      floor number
+ *     string   image url
+ *     int      location count
+ *     int[]    offset of each location record, from the start of the file
+ *
+ *     location record:
+ *         int      x coordinate
+ *         int      y coordinate
+ *         short    direction, in degrees (-1 if unknown)
+ *         string   location resource uri
+ *         short    access point count
+ *         access point entry[], ACCESS_POINT_ENTRY_SIZE bytes each:
+ *             6 bytes  BSSID
+ *             byte     -mean RSS, in dBm
+ *             byte     standard deviation, in units of STD_DEV_QUANTUM dBm
+ *             short    sample count
+ *
+ *     string: unsigned short byte length, then UTF-8 bytes
+ * </pre>
+ */
+public class FingerprintStore implements FingerprintSet {
+    final static int MAGIC = 0x4d4d4650; // "MMFP"
+    final static byte VERSION = 1;
+    final static int ACCESS_POINT_ENTRY_SIZE = 10;
+    final static double STD_DEV_QUANTUM = 0.25;
+    public final static String FILE_EXTENSION = ".fp";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final MappedByteBuffer buffer;
+    private final String building_name;
+    private final int floor_number;
+    private final String image_url;
+    private final int[] location_offsets;
+    private final int[] access_point_offsets;
+
+    private FingerprintStore(MappedByteBuffer _buffer) throws IOException {
+        this.buffer = _buffer;
+        this.buffer.order(ByteOrder.BIG_ENDIAN);
+
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.get(4) != VERSION) {
+            throw new IOException("Not a fingerprint store");
+        }
+        int position = 5;
+        this.building_name = readString(this.buffer, position);
+        position += 2 + stringLength(this.buffer, position);
+        this.floor_number = this.buffer.getInt(position);
+        position += 4;
+        this.image_url = readString(this.buffer, position);
+        position += 2 + stringLength(this.buffer, position);
+
+        int count = this.buffer.getInt(position);
+        position += 4;
+        this.location_offsets = new int[count];
+        this.access_point_offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            int offset = this.buffer.getInt(position + i * 4);
+            this.location_offsets[i] = offset;
+            /* Skip x, y and direction, then the resource uri, to find the access point count */
+            int uri_offset = offset + 10;
+            this.access_point_offsets[i] = uri_offset + 2 + stringLength(this.buffer, uri_offset);
+        }
+    }
+
+    /**
+     * Map a fingerprint store in to memory
+     * @param file  The store to open
+     * @return the opened store
+     * @throws IOException  If the file can't be read or is not a fingerprint store
+     */
+    public static FingerprintStore open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            /* The mapping stays valid after the file is closed */
+            return new FingerprintStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Write a floor's fingerprints to a file
+     * @param file              The file to write to
+     * @param building_name     The name of the building the floor is in
+     * @param floor_number      The floor number
+     * @param image_url         The URL of the floor image the coordinates refer to
+     * @param locations         The mapped locations
+     * @param accessPoints      The access points seen at each location, in the same order
+     * @throws IOException  If the file can't be written
+     */
+    public static void write(File file, String building_name, int floor_number, String image_url,
+                             List<Location> locations, List<List<AccessPoint>> accessPoints)
+            throws IOException {
+        ArrayList<Record> records = new ArrayList<Record>(locations.size());
+        for (int i = 0; i < locations.size(); i++) {
+            Location location = locations.get(i);
+            records.add(new Record(location.getX_coordinate(), location.getY_coordinate(),
+                                   directionDegrees(location.getDirection()), location.getResourceUri(),
+                                   accessPoints.get(i)));
+        }
+        writeRecords(file, building_name, floor_number, image_url, records);
+    }
+
+    /**
+     * Add a location to a floor's store, creating the store if there isn't one yet.
+     *      Beyond max_locations, the oldest locations are dropped. The new store is written
+     *      beside the old one and then moved over it, so the old one is never left half written.
+     * @param file              The store to add to
+     * @param building_name     The name of the building the floor is in
+     * @param floor_number      The floor number
+     * @param image_url         The URL of the floor image the coordinates refer to
+     * @param x_coordinate      The x coordinate of the location on the floor image
+     * @param y_coordinate      The y coordinate of the location on the floor image
+     * @param accessPoints      The access points seen at the location
+     * @param max_locations     The most locations to keep
+     * @throws IOException  If the store can't be written
+     */
+    public static void append(File file, String building_name, int floor_number, String image_url,
+                              int x_coordinate, int y_coordinate, List<AccessPoint> accessPoints,
+                              int max_locations) throws IOException {
+        ArrayList<Record> records = new ArrayList<Record>();
+        if (file.exists()) {
+            try {
+                FingerprintStore existing = open(file);
+                int first = Math.max(0, existing.getLocationCount() - max_locations + 1);
+                for (int i = first; i < existing.getLocationCount(); i++) {
+                    records.add(new Record(existing, i));
+                }
+            } catch (IOException e) {
+                /* Not a store we can read, so start it again */
+                e.printStackTrace();
+            }
+        }
+        records.add(new Record(x_coordinate, y_coordinate, -1, "", accessPoints));
+
+        /* Not FILE_EXTENSION, so openAll never picks up a half written store */
+        File temporary = new File(file.getPath() + ".tmp");
+        writeRecords(temporary, building_name, floor_number, image_url, records);
+        if (! temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Couldn't replace " + file);
+        }
+    }
+
+    private static void writeRecords(File file, String building_name, int floor_number, String image_url,
+                                     List<Record> records) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            byte[] building_bytes = building_name.getBytes(UTF8);
+            byte[] image_bytes = image_url.getBytes(UTF8);
+
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeString(out, building_bytes);
+            out.writeInt(floor_number);
+            writeString(out, image_bytes);
+            out.writeInt(records.size());
+
+            /* Location records start after the offset table */
+            int offset = 5 + 2 + building_bytes.length + 4 + 2 + image_bytes.length + 4 + 4 * records.size();
+            for (Record record : records) {
+                out.writeInt(offset);
+                offset += record.size();
+            }
+
+            for (Record record : records) {
+                out.writeInt(record.x_coordinate);
+                out.writeInt(record.y_coordinate);
+                out.writeShort(record.direction);
+                writeString(out, record.uri);
+                out.writeShort(record.bssids.length);
+                for (int i = 0; i < record.bssids.length; i++) {
+                    long bssid = record.bssids[i];
+                    out.writeShort((int) (bssid >>> 32));
+                    out.writeInt((int) bssid);
+                    out.writeByte(record.strengths[i]);
+                    out.writeByte(record.std_devs[i]);
+                    out.writeShort(record.sample_counts[i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Open every fingerprint store in a directory
+     * @param directory     The directory holding one store per floor
+     * @return the stores that could be opened
+     */
+    public static List<FingerprintStore> openAll(File directory) {
+        ArrayList<FingerprintStore> stores = new ArrayList<FingerprintStore>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return stores;
+        }
+        for (File file : files) {
+            if (! file.getName().endsWith(FILE_EXTENSION)) {
+                continue;
+            }
+            try {
+                stores.add(open(file));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return stores;
+    }
+
+    @Override
+    public String getBuildingName() {
+        return this.building_name;
+    }
+
+    @Override
+    public int getFloorNumber() {
+        return this.floor_number;
+    }
+
+    @Override
+    public String getImageUrl() {
+        return this.image_url;
+    }
+
+    @Override
+    public int getLocationCount() {
+        return this.location_offsets.length;
+    }
+
+    @Override
+    public int getX(int location) {
+        return this.buffer.getInt(this.location_offsets[location]);
+    }
+
+    @Override
+    public int getY(int location) {
+        return this.buffer.getInt(this.location_offsets[location] + 4);
+    }
+
+    /**
+     * @param location  The index of the location
+     * @return the direction the location was mapped facing, in degrees, or -1 if unknown
+     */
+    public int getDirection(int location) {
+        return this.buffer.getShort(this.location_offsets[location] + 8);
+    }
+
+    /**
+     * @param location  The index of the location
+     * @return the resource uri of the Location on the server
+     */
+    public String getResourceUri(int location) {
+        return readString(this.buffer, this.location_offsets[location] + 10);
+    }
+
+    @Override
+    public int getAccessPointCount(int location) {
+        return this.buffer.getShort(this.access_point_offsets[location]) & 0xFFFF;
+    }
+
+    @Override
+    public long getBssid(int location, int access_point) {
+        int entry = this.entryOffset(location, access_point);
+        long high = this.buffer.getShort(entry) & 0xFFFFL;
+        long low = this.buffer.getInt(entry + 2) & 0xFFFFFFFFL;
+        return (high << 32) | low;
+    }
+
+    @Override
+    public double getSignalStrength(int location, int access_point) {
+        return -(this.buffer.get(this.entryOffset(location, access_point) + 6) & 0xFF);
+    }
+
+    /**
+     * @param location      The index of the location
+     * @param access_point  The index of the access point within the location
+     * @return the standard deviation of the access point's RSS at the location, in dBm
+     */
+    public double getStandardDeviation(int location, int access_point) {
+        return (this.buffer.get(this.entryOffset(location, access_point) + 7) & 0xFF) * STD_DEV_QUANTUM;
+    }
+
+    /**
+     * @param location      The index of the location
+     * @param access_point  The index of the access point within the location
+     * @return the number of readings the access point's statistics are based on
+     */
+    public int getSampleCount(int location, int access_point) {
+        return this.buffer.getShort(this.entryOffset(location, access_point) + 8) & 0xFFFF;
+    }
+
+    private int entryOffset(int location, int access_point) {
+        return this.access_point_offsets[location] + 2 + access_point * ACCESS_POINT_ENTRY_SIZE;
+    }
+
+    private static int stringLength(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    private static String readString(ByteBuffer buffer, int offset) {
+        int length = stringLength(buffer, offset);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeString(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long for a fingerprint store");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int countValid(List<AccessPoint> accessPoints) {
+        int count = 0;
+        for (AccessPoint accessPoint : accessPoints) {
+            if (accessPoint.getBssid() != MacAddresses.INVALID) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int directionDegrees(Location.Direction direction) {
+        switch (direction) {
+            case NORTH:
+                return 0;
+            case EAST:
+                return 90;
+            case SOUTH:
+                return 180;
+            case WEST:
+                return 270;
+            default:
+                return -1;
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * A location record, already in the units it is stored in
+     */
+    private static class Record {
+        final int x_coordinate;
+        final int y_coordinate;
+        final int direction;
+        final byte[] uri;
+        final long[] bssids;
+        /* -mean RSS in dBm, standard deviation in STD_DEV_QUANTUM units, and sample count */
+        final int[] strengths;
+        final int[] std_devs;
+        final int[] sample_counts;
+
+        Record(int _x_coordinate, int _y_coordinate, int _direction, String _uri, List<AccessPoint> accessPoints) {
+            this.x_coordinate = _x_coordinate;
+            this.y_coordinate = _y_coordinate;
+            this.direction = _direction;
+            this.uri = _uri.getBytes(UTF8);
+            int count = countValid(accessPoints);
+            this.bssids = new long[count];
+            this.strengths = new int[count];
+            this.std_devs = new int[count];
+            this.sample_counts = new int[count];
+            int i = 0;
+            for (AccessPoint accessPoint : accessPoints) {
+                if (accessPoint.getBssid() == MacAddresses.INVALID) {
+                    continue;
+                }
+                this.bssids[i] = accessPoint.getBssid();
+                this.strengths[i] = clamp((int) Math.round(-accessPoint.getSignalStrength()), 0, 255);
+                this.std_devs[i] = clamp((int) Math.round(accessPoint.getStandardDeviation() / STD_DEV_QUANTUM), 0, 255);
+                this.sample_counts[i] = clamp(accessPoint.getSampleCount(), 0, 0xFFFF);
+                i++;
+            }
+        }
+
+        Record(FingerprintStore store, int location) {
+            this.x_coordinate = store.getX(location);
+            this.y_coordinate = store.getY(location);
+            this.direction = store.getDirection(location);
+            this.uri = store.getResourceUri(location).getBytes(UTF8);
+            int count = store.getAccessPointCount(location);
+            this.bssids = new long[count];
+            this.strengths = new int[count];
+            this.std_devs = new int[count];
+            this.sample_counts = new int[count];
+            for (int i = 0; i < count; i++) {
+                this.bssids[i] = store.getBssid(location, i);
+                this.strengths[i] = (int) -store.getSignalStrength(location, i);
+                this.std_devs[i] = (int) Math.round(store.getStandardDeviation(location, i) / STD_DEV_QUANTUM);
+                this.sample_counts[i] = store.getSampleCount(location, i);
+            }
+        }
+
+        /**
+         * @return the number of bytes the record takes up in the file
+         */
+        int size() {
+            return 10 + 2 + this.uri.length + 2 + ACCESS_POINT_ENTRY_SIZE * this.bssids.length;
+        }
+    }
+}
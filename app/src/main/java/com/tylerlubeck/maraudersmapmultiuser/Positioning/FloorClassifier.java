@@ -0,0 +1,74 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+import com.tylerlubeck.maraudersmapmultiuser.MacAddresses;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the building and floor the user is most likely on, from which access points they can
+ * see. This is the cheap first stage of positioning: the expensive (x, y) matching then only
+ * has to look at the chosen floor's fingerprints.
+ *
+ * Each visible access point that appears in a floor's FloorSignature votes for that floor.
+ * Stronger access points get bigger votes, since they are more likely to be on the same floor
+ * as the user.
+ */
+public class FloorClassifier {
+    /* Floors scoring at least this fraction of the best floor's score are also matched against */
+    final static double AMBIGUOUS_SCORE_RATIO = 0.9;
+    final static double MISSING_SIGNAL_STRENGTH = -100;
+
+    private final ArrayList<FloorSignature> signatures;
+
+    public FloorClassifier() {
+        this.signatures = new ArrayList<FloorSignature>();
+    }
+
+    /**
+     * Add a floor. Floors are identified by the order they are added in.
+     * @param floor     The fingerprints of the floor
+     */
+    public void addFloor(FingerprintSet floor) {
+        this.signatures.add(new FloorSignature(floor));
+    }
+
+    /**
+     * Find the floors the user is most likely on
+     * @param accessPoints  The access points seen by the user
+     * @return the indices of the best floor and any floor scoring almost as well,
+     *              or an empty array if none of the access points have been mapped
+     */
+    public int[] classify(List<AccessPoint> accessPoints) {
+        int num_floors = this.signatures.size();
+        double[] scores = new double[num_floors];
+        double best_score = 0;
+
+        for (int floor = 0; floor < num_floors; floor++) {
+            FloorSignature signature = this.signatures.get(floor);
+            for (AccessPoint accessPoint : accessPoints) {
+                long bssid = accessPoint.getBssid();
+                if (bssid != MacAddresses.INVALID && signature.mightContain(bssid)) {
+                    scores[floor] += Math.max(0, accessPoint.getSignalStrength() - MISSING_SIGNAL_STRENGTH);
+                }
+            }
+            best_score = Math.max(best_score, scores[floor]);
+        }
+
+        if (best_score == 0) {
+            return new int[0];
+        }
+
+        int num_chosen = 0;
+        int[] chosen = new int[num_floors];
+        for (int floor = 0; floor < num_floors; floor++) {
+            if (scores[floor] >= best_score * AMBIGUOUS_SCORE_RATIO) {
+                chosen[num_chosen++] = floor;
+            }
+        }
+        int[] result = new int[num_chosen];
+        System.arraycopy(chosen, 0, result, 0, num_chosen);
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+/**
+ * A Bloom filter of every BSSID seen anywhere on a floor.
+ *
+ * Checking whether an access point could be on a floor costs a few bit lookups, regardless of
+ * how many locations were mapped there. False positives are possible but rare; false negatives
+ * are not.
+ */
+public class FloorSignature {
+    final static int BITS_PER_ACCESS_POINT = 10;
+    final static int NUM_HASHES = 4;
+
+    private final long[] bits;
+    private final int mask;
+
+    /**
+     * Build the signature of every access point on a floor
+     * @param floor     The fingerprints of the floor
+     */
+    public FloorSignature(FingerprintSet floor) {
+        int num_entries = 0;
+        for (int location = 0; location < floor.getLocationCount(); location++) {
+            num_entries += floor.getAccessPointCount(location);
+        }
+
+        int num_bits = Math.max(64, num_entries * BITS_PER_ACCESS_POINT);
+        num_bits = Integer.highestOneBit(num_bits - 1) << 1;
+        this.bits = new long[num_bits / 64];
+        this.mask = num_bits - 1;
+
+        for (int location = 0; location < floor.getLocationCount(); location++) {
+            int count = floor.getAccessPointCount(location);
+            for (int i = 0; i < count; i++) {
+                this.add(floor.getBssid(location, i));
+            }
+        }
+    }
+
+    /**
+     * @param bssid     The packed BSSID to check
+     * @return true if the access point may have been seen on the floor
+     */
+    public boolean mightContain(long bssid) {
+        int first = firstHash(bssid);
+        int second = secondHash(bssid);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (first + i * second) & this.mask;
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(long bssid) {
+        int first = firstHash(bssid);
+        int second = secondHash(bssid);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (first + i * second) & this.mask;
+            this.bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private static int firstHash(long bssid) {
+        long h = bssid * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /* Always odd, so that successive probes never repeat the same bit */
+    private static int secondHash(long bssid) {
+        long h = (bssid ^ (bssid >>> 29)) * 0xBF58476D1CE4E5B9L;
+        return (int) (h >>> 32) | 1;
+    }
+}
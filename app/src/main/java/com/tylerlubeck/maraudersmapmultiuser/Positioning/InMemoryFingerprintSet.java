@@ -0,0 +1,121 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+import com.tylerlubeck.maraudersmapmultiuser.MacAddresses;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A FingerprintSet built up in memory from the AccessPoints produced by mapping a floor.
+ */
+public class InMemoryFingerprintSet implements FingerprintSet {
+    private final String building_name;
+    private final int floor_number;
+    private final String image_url;
+    private final ArrayList<LocationFingerprint> locations;
+
+    /**
+     * @param building_name     The name of the building this floor is in
+     * @param floor_number      The floor number
+     * @param image_url         The URL of the floor image the coordinates refer to
+     */
+    public InMemoryFingerprintSet(String building_name, int floor_number, String image_url) {
+        this.building_name = building_name;
+        this.floor_number = floor_number;
+        this.image_url = image_url;
+        this.locations = new ArrayList<LocationFingerprint>();
+    }
+
+    /**
+     * Add the access points mapped at a Location
+     * @param location      The location the access points were seen at
+     * @param accessPoints  The averaged access points seen at the location
+     */
+    public void addLocation(Location location, List<AccessPoint> accessPoints) {
+        this.addLocation(location.getX_coordinate(), location.getY_coordinate(), accessPoints);
+    }
+
+    /**
+     * Add the access points mapped at a point on the floor
+     * @param x_coordinate  The x coordinate on the floor image
+     * @param y_coordinate  The y coordinate on the floor image
+     * @param accessPoints  The averaged access points seen at the point
+     */
+    public void addLocation(int x_coordinate, int y_coordinate, List<AccessPoint> accessPoints) {
+        long[] bssids = new long[accessPoints.size()];
+        float[] strengths = new float[accessPoints.size()];
+        int count = 0;
+        for (AccessPoint accessPoint : accessPoints) {
+            if (accessPoint.getBssid() == MacAddresses.INVALID) {
+                continue;
+            }
+            bssids[count] = accessPoint.getBssid();
+            strengths[count] = (float) accessPoint.getSignalStrength();
+            count++;
+        }
+        this.locations.add(new LocationFingerprint(x_coordinate, y_coordinate, bssids, strengths, count));
+    }
+
+    @Override
+    public String getBuildingName() {
+        return this.building_name;
+    }
+
+    @Override
+    public int getFloorNumber() {
+        return this.floor_number;
+    }
+
+    @Override
+    public String getImageUrl() {
+        return this.image_url;
+    }
+
+    @Override
+    public int getLocationCount() {
+        return this.locations.size();
+    }
+
+    @Override
+    public int getX(int location) {
+        return this.locations.get(location).x_coordinate;
+    }
+
+    @Override
+    public int getY(int location) {
+        return this.locations.get(location).y_coordinate;
+    }
+
+    @Override
+    public int getAccessPointCount(int location) {
+        return this.locations.get(location).count;
+    }
+
+    @Override
+    public long getBssid(int location, int access_point) {
+        return this.locations.get(location).bssids[access_point];
+    }
+
+    @Override
+    public double getSignalStrength(int location, int access_point) {
+        return this.locations.get(location).strengths[access_point];
+    }
+
+    private static class LocationFingerprint {
+        final int x_coordinate;
+        final int y_coordinate;
+        final long[] bssids;
+        final float[] strengths;
+        final int count;
+
+        LocationFingerprint(int x_coordinate, int y_coordinate, long[] bssids, float[] strengths, int count) {
+            this.x_coordinate = x_coordinate;
+            this.y_coordinate = y_coordinate;
+            this.bssids = bssids;
+            this.strengths = strengths;
+            this.count = count;
+        }
+    }
+}
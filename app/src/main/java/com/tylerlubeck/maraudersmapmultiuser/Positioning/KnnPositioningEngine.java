@@ -0,0 +1,278 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+import com.tylerlubeck.maraudersmapmultiuser.BssidTable;
+import com.tylerlubeck.maraudersmapmultiuser.MacAddresses;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.MyLocation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Estimates the user's position on the device, without a round trip to the server.
+ *
+ * The access points seen by the user are compared against every mapped location using the
+ * Euclidean distance between signal strengths. An access point missing on either side counts as
+ * MISSING_SIGNAL_STRENGTH. The K nearest locations vote for the floor, weighted by inverse
+ * distance, and the position is the weighted average of the neighbours on the winning floor.
+ *
+ * Positioning runs in two stages. A FloorClassifier first picks the floor from which access
+ * points are visible. Only that floor's candidate locations, found through its BssidIndex, are
+ * then compared, so the cost grows with the size of a floor rather than with the size of the
+ * campus.
+ */
+public class KnnPositioningEngine {
+    final static int K = 3;
+    final static double MISSING_SIGNAL_STRENGTH = -100;
+
+    /* Keeps an exact match from getting an infinite weight */
+    private final static double DISTANCE_EPSILON = 1e-3;
+
+    private static KnnPositioningEngine instance;
+
+    private final ArrayList<FingerprintSet> floors;
+    private FloorClassifier classifier;
+    private ArrayList<BssidIndex> indexes;
+
+    KnnPositioningEngine() {
+        this.floors = new ArrayList<FingerprintSet>();
+    }
+
+    /**
+     * @return the engine shared by the whole app
+     */
+    public static synchronized KnnPositioningEngine getInstance() {
+        if (instance == null) {
+            instance = new KnnPositioningEngine();
+        }
+        return instance;
+    }
+
+    /**
+     * Make a floor's fingerprints available for positioning
+     * @param floor     The fingerprints of the floor
+     */
+    public synchronized void addFloor(FingerprintSet floor) {
+        this.floors.add(floor);
+        this.classifier = null;
+    }
+
+    /**
+     * Replace the known floors with the fingerprint stores in a directory.
+     *      The stores are memory mapped, so this is cheap enough to do on the main thread.
+     * @param directory     The directory holding one FingerprintStore per floor
+     */
+    public synchronized void loadFloors(File directory) {
+        this.floors.clear();
+        this.floors.addAll(FingerprintStore.openAll(directory));
+        this.classifier = null;
+    }
+
+    /**
+     * Forget every floor's fingerprints
+     */
+    public synchronized void clear() {
+        this.floors.clear();
+        this.classifier = null;
+    }
+
+    /**
+     * @return true if there is anything to compare against
+     */
+    public synchronized boolean hasFingerprints() {
+        return ! this.floors.isEmpty();
+    }
+
+    /**
+     * @param building_name     The name of a building
+     * @return the floor image URL of every floor of the building with fingerprints
+     */
+    public synchronized List<String> getImageUrls(String building_name) {
+        ArrayList<String> urls = new ArrayList<String>();
+        for (FingerprintSet floor : this.floors) {
+            String url = floor.getImageUrl();
+            if (floor.getBuildingName().equals(building_name) && url != null && ! urls.contains(url)) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Estimate where the user is from the access points they can see
+     * @param accessPoints  The averaged access points seen by the user
+     * @return the estimated location, or null if none of the access points have been mapped
+     */
+    public synchronized MyLocation locate(List<AccessPoint> accessPoints) {
+        BssidTable<AccessPoint> query = new BssidTable<AccessPoint>(accessPoints.size());
+        double missing_distance = 0;
+        for (AccessPoint accessPoint : accessPoints) {
+            if (accessPoint.getBssid() == MacAddresses.INVALID) {
+                continue;
+            }
+            query.put(accessPoint.getBssid(), accessPoint);
+            double difference = accessPoint.getSignalStrength() - MISSING_SIGNAL_STRENGTH;
+            missing_distance += difference * difference;
+        }
+        if (query.size() == 0) {
+            return null;
+        }
+
+        this.buildIndexes();
+        Neighbours neighbours = new Neighbours(K);
+        for (int floor_index : this.classifier.classify(accessPoints)) {
+            BssidIndex index = this.indexes.get(floor_index);
+            for (int entry : index.findCandidates(accessPoints)) {
+                FingerprintSet floor = index.getFloor(entry);
+                int location = index.getLocation(entry);
+                double distance = squaredDistance(query, missing_distance, floor, location);
+                if (distance >= 0) {
+                    neighbours.offer(floor, location, distance);
+                }
+            }
+        }
+        return neighbours.estimate();
+    }
+
+    /**
+     * Build the floor classifier and each floor's BssidIndex, if the floors have changed
+     */
+    private void buildIndexes() {
+        if (this.classifier != null) {
+            return;
+        }
+        this.classifier = new FloorClassifier();
+        this.indexes = new ArrayList<BssidIndex>(this.floors.size());
+        for (FingerprintSet floor : this.floors) {
+            this.classifier.addFloor(floor);
+            BssidIndex index = new BssidIndex();
+            index.addFloor(floor);
+            this.indexes.add(index);
+        }
+    }
+
+    /**
+     * Compute the squared distance between the query and a mapped location.
+     *      Every query access point starts out compared against MISSING_SIGNAL_STRENGTH, and is
+     *      corrected as the location's access points are matched up.
+     * @param query             The query access points, keyed by BSSID
+     * @param missing_distance  The squared distance of the query from an empty fingerprint
+     * @param floor             The floor the location is on
+     * @param location          The index of the location
+     * @return the squared distance, which is never negative,
+     *              or -1 if the location shares no access points with the query
+     */
+    static double squaredDistance(BssidTable<AccessPoint> query, double missing_distance,
+                                  FingerprintSet floor, int location) {
+        double distance = missing_distance;
+        int matched = 0;
+        int count = floor.getAccessPointCount(location);
+        for (int i = 0; i < count; i++) {
+            double mapped = floor.getSignalStrength(location, i);
+            AccessPoint seen = query.get(floor.getBssid(location, i));
+            if (seen == null) {
+                double difference = mapped - MISSING_SIGNAL_STRENGTH;
+                distance += difference * difference;
+            } else {
+                double strength = seen.getSignalStrength();
+                double difference = strength - mapped;
+                double unmatched = strength - MISSING_SIGNAL_STRENGTH;
+                distance += difference * difference - unmatched * unmatched;
+                matched++;
+            }
+        }
+        if (matched == 0) {
+            return -1;
+        }
+        /* Rounding in the corrections can take a near exact match just below zero */
+        return Math.max(0, distance);
+    }
+
+    /**
+     * The K closest locations seen so far, ordered nearest first
+     */
+    static class Neighbours {
+        private final FingerprintSet[] floors;
+        private final int[] locations;
+        private final double[] distances;
+        private int size;
+
+        Neighbours(int k) {
+            this.floors = new FingerprintSet[k];
+            this.locations = new int[k];
+            this.distances = new double[k];
+        }
+
+        /**
+         * Keep the location if it is one of the K closest so far
+         */
+        void offer(FingerprintSet floor, int location, double squared_distance) {
+            int k = this.distances.length;
+            int position = this.size;
+            while (position > 0 && this.distances[position - 1] > squared_distance) {
+                position--;
+            }
+            if (position >= k) {
+                return;
+            }
+            for (int i = Math.min(this.size, k - 1); i > position; i--) {
+                this.floors[i] = this.floors[i - 1];
+                this.locations[i] = this.locations[i - 1];
+                this.distances[i] = this.distances[i - 1];
+            }
+            this.floors[position] = floor;
+            this.locations[position] = location;
+            this.distances[position] = squared_distance;
+            this.size = Math.min(this.size + 1, k);
+        }
+
+        /**
+         * Vote for a floor and average the neighbours on it
+         * @return the estimated location, or null if there are no neighbours
+         */
+        MyLocation estimate() {
+            if (this.size == 0) {
+                return null;
+            }
+
+            double[] weights = new double[this.size];
+            for (int i = 0; i < this.size; i++) {
+                weights[i] = 1.0 / (Math.sqrt(Math.max(0, this.distances[i])) + DISTANCE_EPSILON);
+            }
+
+            FingerprintSet best_floor = null;
+            double best_vote = -1;
+            for (int i = 0; i < this.size; i++) {
+                double vote = 0;
+                for (int j = 0; j < this.size; j++) {
+                    if (this.floors[j] == this.floors[i]) {
+                        vote += weights[j];
+                    }
+                }
+                if (vote > best_vote) {
+                    best_vote = vote;
+                    best_floor = this.floors[i];
+                }
+            }
+            if (best_floor == null) {
+                return null;
+            }
+
+            double x = 0;
+            double y = 0;
+            for (int i = 0; i < this.size; i++) {
+                if (this.floors[i] == best_floor) {
+                    x += weights[i] * best_floor.getX(this.locations[i]);
+                    y += weights[i] * best_floor.getY(this.locations[i]);
+                }
+            }
+
+            return new MyLocation(best_floor.getBuildingName(),
+                                  best_floor.getFloorNumber(),
+                                  (int) Math.round(x / best_vote),
+                                  (int) Math.round(y / best_vote),
+                                  best_floor.getImageUrl());
+        }
+    }
+}
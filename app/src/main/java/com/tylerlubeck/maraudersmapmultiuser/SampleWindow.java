@@ -0,0 +1,135 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+/**
+ * A fixed-size ring buffer of timestamped signal strength readings for a single access point.
+ *
+ * The mean and variance are computed with exponentially decaying weights, so recent readings
+ * count for more than old ones. Once the buffer is full, the oldest reading is overwritten.
+ */
+public class SampleWindow {
+    private final long[] timestamps;
+    private final int[] strengths;
+    private int next;
+    private int count;
+
+    private double mean;
+    private double variance;
+    private double total_weight;
+
+    /**
+     * @param size  The number of readings to keep
+     */
+    public SampleWindow(int size) {
+        this.timestamps = new long[size];
+        this.strengths = new int[size];
+    }
+
+    /**
+     * Record a reading, overwriting the oldest one if the window is full
+     * @param timestamp     When the reading was taken, in milliseconds
+     * @param strength      The RSS reading, in dBm
+     */
+    public void add(long timestamp, int strength) {
+        this.timestamps[this.next] = timestamp;
+        this.strengths[this.next] = strength;
+        this.next = (this.next + 1) % this.timestamps.length;
+        if (this.count < this.timestamps.length) {
+            this.count++;
+        }
+    }
+
+    /**
+     * @return the time of the most recent reading, or Long.MIN_VALUE if there are none
+     */
+    public long getNewestTimestamp() {
+        if (this.count == 0) {
+            return Long.MIN_VALUE;
+        }
+        int newest = (this.next + this.timestamps.length - 1) % this.timestamps.length;
+        return this.timestamps[newest];
+    }
+
+    /**
+     * @return the number of readings in the window
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Recompute the decayed mean and variance as of a point in time.
+     *      Each reading is weighted by exp(-age / time_constant).
+     * @param now               The current time, in milliseconds
+     * @param time_constant     How quickly old readings lose their weight, in milliseconds
+     */
+    public void decay(long now, double time_constant) {
+        double weight_sum = 0;
+        double weight_squared_sum = 0;
+        double weighted_sum = 0;
+
+        for (int i = 0; i < this.count; i++) {
+            double weight = Math.exp(-(now - this.timestamps[i]) / time_constant);
+            weight_sum += weight;
+            weight_squared_sum += weight * weight;
+            weighted_sum += weight * this.strengths[i];
+        }
+
+        this.total_weight = weight_sum;
+        if (weight_sum == 0) {
+            this.mean = 0;
+            this.variance = 0;
+            return;
+        }
+        this.mean = weighted_sum / weight_sum;
+
+        double squared_deviations = 0;
+        for (int i = 0; i < this.count; i++) {
+            double weight = Math.exp(-(now - this.timestamps[i]) / time_constant);
+            double deviation = this.strengths[i] - this.mean;
+            squared_deviations += weight * deviation * deviation;
+        }
+
+        /* Unbiased weighted variance; with one effective reading there is no deviation */
+        double denominator = weight_sum - weight_squared_sum / weight_sum;
+        this.variance = denominator > 0 ? squared_deviations / denominator : 0;
+    }
+
+    /**
+     * @return the decayed mean as of the last call to {@link #decay(long, double)}
+     */
+    public double getMean() {
+        return this.mean;
+    }
+
+    /**
+     * @return the decayed variance as of the last call to {@link #decay(long, double)}
+     */
+    public double getVariance() {
+        return this.variance;
+    }
+
+    /**
+     * @return the decayed standard deviation as of the last call to {@link #decay(long, double)}
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(this.variance);
+    }
+
+    /**
+     * @return the sum of the reading weights as of the last call to {@link #decay(long, double)}
+     */
+    public double getTotalWeight() {
+        return this.total_weight;
+    }
+
+    /**
+     * Forget every reading in the window
+     */
+    public void clear() {
+        this.next = 0;
+        this.count = 0;
+        this.mean = 0;
+        this.variance = 0;
+        this.total_weight = 0;
+    }
+}
@@ -0,0 +1,106 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+import android.annotation.TargetApi;
+import android.net.wifi.ScanResult;
+import android.os.Build;
+import android.os.SystemClock;
+
+import java.util.List;
+
+/**
+ * Decides which scan results are genuinely new readings.
+ *
+ * getScanResults() also returns cached results that were carried over from earlier scans,
+ *      including scans started by other apps. Counting those again would make an access point
+ *      look more stable than it is, so each result is checked against the last timestamp
+ *      seen for its BSSID.
+ *
+ * ScanResult.timestamp only exists on API 17 and up. On older devices every result is
+ *      treated as fresh.
+ *
+ * Usage:
+ * <pre>
+ *     filter.beginScan(results);
+ *     for (ScanResult result : results) {
+ *         if (filter.isFresh(bssid, result)) { ... }
+ *     }
+ *     if (filter.getFreshCount() == 0) { the scan told us nothing new }
+ * </pre>
+ */
+public class ScanFreshnessFilter {
+    /* Results this much older than the scan were left over from an earlier scan.
+     * Their age is measured against the clock, so a scan made up only of old results has none fresh */
+    final static long MAX_RESULT_AGE_US = 10 * 1000 * 1000;
+
+    private static final boolean HAS_TIMESTAMPS =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
+
+    /* Single element arrays, so that the timestamps can be updated in place */
+    private final BssidTable<long[]> last_seen;
+    /* When the scan arrived, on the same clock as ScanResult.timestamp */
+    private long scan_time_us;
+    private int num_fresh;
+
+    public ScanFreshnessFilter() {
+        this.last_seen = new BssidTable<long[]>();
+    }
+
+    /**
+     * Prepare to filter a new set of scan results
+     * @param results   The results returned by getScanResults()
+     */
+    public void beginScan(List<ScanResult> results) {
+        this.num_fresh = 0;
+        /* ScanResult.timestamp is in microseconds since boot */
+        this.scan_time_us = SystemClock.elapsedRealtime() * 1000;
+    }
+
+    /**
+     * Check whether a result is a new reading, and remember it if so
+     * @param bssid     The packed BSSID of the result
+     * @param result    The scan result
+     * @return true if the reading has not been seen before
+     */
+    public boolean isFresh(long bssid, ScanResult result) {
+        if (! HAS_TIMESTAMPS) {
+            this.num_fresh++;
+            return true;
+        }
+
+        long timestamp = getTimestamp(result);
+        if (this.scan_time_us - timestamp > MAX_RESULT_AGE_US) {
+            return false;
+        }
+
+        long[] last = this.last_seen.get(bssid);
+        if (last == null) {
+            this.last_seen.put(bssid, new long[] { timestamp });
+        } else if (timestamp > last[0]) {
+            last[0] = timestamp;
+        } else {
+            return false;
+        }
+        this.num_fresh++;
+        return true;
+    }
+
+    /**
+     * @return the number of fresh results seen since the last call to {@link #beginScan(List)}
+     */
+    public int getFreshCount() {
+        return this.num_fresh;
+    }
+
+    /**
+     * Forget every timestamp seen
+     */
+    public void clear() {
+        this.last_seen.clear();
+        this.num_fresh = 0;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static long getTimestamp(ScanResult result) {
+        return result.timestamp;
+    }
+}
@@ -0,0 +1,95 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+/**
+ * Running statistics for the signal strengths seen from a single access point.
+ *
+ * Samples are folded in one at a time using Welford's algorithm, so the mean and standard
+ * deviation are available at any point without keeping the individual readings around.
+ * Memory stays constant no matter how many scans are performed.
+ */
+public class SignalStatistics {
+    private int count;
+    private double mean;
+    private double sum_of_squares;
+    private int min;
+    private int max;
+
+    public SignalStatistics() {
+        this.reset();
+    }
+
+    /**
+     * Fold a new signal strength reading in to the statistics
+     * @param strength      The RSS reading, in dBm
+     */
+    public void add(int strength) {
+        this.count++;
+        double delta = strength - this.mean;
+        this.mean += delta / this.count;
+        this.sum_of_squares += delta * (strength - this.mean);
+
+        if (strength < this.min) {
+            this.min = strength;
+        }
+        if (strength > this.max) {
+            this.max = strength;
+        }
+    }
+
+    /**
+     * Forget every reading seen so far
+     */
+    public void reset() {
+        this.count = 0;
+        this.mean = 0;
+        this.sum_of_squares = 0;
+        this.min = Integer.MAX_VALUE;
+        this.max = Integer.MIN_VALUE;
+    }
+
+    /**
+     * @return the number of readings seen
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the mean signal strength, or 0 if there have been no readings
+     */
+    public double getMean() {
+        return this.mean;
+    }
+
+    /**
+     * @return the sample variance of the signal strengths
+     */
+    public double getVariance() {
+        /* If we have one or fewer strengths, there is no deviation */
+        if (this.count <= 1) {
+            return 0;
+        }
+        return this.sum_of_squares / (this.count - 1);
+    }
+
+    /**
+     * @return the sample standard deviation of the signal strengths
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(this.getVariance());
+    }
+
+    /**
+     * @return the weakest signal strength seen, or 0 if there have been no readings
+     */
+    public int getMin() {
+        return this.count == 0 ? 0 : this.min;
+    }
+
+    /**
+     * @return the strongest signal strength seen, or 0 if there have been no readings
+     */
+    public int getMax() {
+        return this.count == 0 ? 0 : this.max;
+    }
+}
@@ -10,6 +10,7 @@ import android.util.Log;
 
 import com.crashlytics.android.Crashlytics;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
+import com.tylerlubeck.maraudersmapmultiuser.API.ApiClient;
 import com.tylerlubeck.maraudersmapmultiuser.R;
 import com.tylerlubeck.maraudersmapmultiuser.Tasks.GenericGETTask;
 import com.tylerlubeck.maraudersmapmultiuser.Tasks.RegisterDeviceAsyncTask;
@@ -63,6 +64,9 @@ public class CreateUserAsyncTask extends GenericGETTask {
             editor.putString("api_key", api_key);
             editor.commit();
 
+            /* Requests already in flight keep their old credentials; everything after uses the new ones */
+            ApiClient.getInstance(this.appContext).setCredentials(facebook_username, api_key);
+
             Log.d("MARAUDERSMAP", String.format("%s: %s", response_data.getString("username"), response_data.getString("api_key")));
 
             registerForGCM(facebook_username, api_key);
@@ -158,7 +162,7 @@ public class CreateUserAsyncTask extends GenericGETTask {
             new RegisterDeviceAsyncTask(this.context.getString(R.string.device_registration_endpoint),
                                         object,
                                         username,
-                                        api_key).execute();
+                                        api_key).executeWithPriority(RequestExecutor.Priority.NORMAL);
         } catch (JSONException e) {
             e.printStackTrace();
         }
@@ -8,11 +8,10 @@ import com.crashlytics.android.Crashlytics;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 
 import java.io.IOException;
@@ -41,6 +40,8 @@ public abstract class GenericGETTask extends AsyncTask<Void, Void, String> {
 
     private final String url;
     private HttpResponseException responseException;
+    private int timeout_ms = RequestExecutor.DEFAULT_TIMEOUT_MS;
+    private volatile HttpRequestBase request;
 
     /**
      *
@@ -58,6 +59,33 @@ public abstract class GenericGETTask extends AsyncTask<Void, Void, String> {
         Log.d("BUILDINGMAPPER", this.url);
     }
 
+    /**
+     * Start the request on the shared request pool
+     * @param priority  How urgent the request is
+     */
+    public void executeWithPriority(RequestExecutor.Priority priority) {
+        this.executeOnExecutor(RequestExecutor.forPriority(priority));
+    }
+
+    /**
+     * @param _timeout_ms   How long to wait to connect, and between reads, before giving up
+     */
+    public void setTimeout(int _timeout_ms) {
+        this.timeout_ms = _timeout_ms;
+    }
+
+    /**
+     * Cancel the task, and abort the request if it has already been sent.
+     *      Neither of the response handlers will be called.
+     */
+    public void abort() {
+        this.cancel(true);
+        HttpRequestBase in_flight = this.request;
+        if (in_flight != null) {
+            in_flight.abort();
+        }
+    }
+
 
     /**
      * If everything works, return the response string. Otherwise, set the responseException.
@@ -68,19 +96,30 @@ public abstract class GenericGETTask extends AsyncTask<Void, Void, String> {
     protected String doInBackground(Void... voids) {
         String response_string = "";
         try {
-            HttpClient http_client = new DefaultHttpClient();
             HttpGet http_get = new HttpGet(this.url);
-            HttpResponse response = http_client.execute(http_get);
-            response_string = new BasicResponseHandler().handleResponse(response);
+            RequestExecutor.setTimeout(http_get, this.timeout_ms);
+            this.request = http_get;
+            HttpResponse response = RequestExecutor.execute(http_get);
+            try {
+                response_string = new BasicResponseHandler().handleResponse(response);
+            } finally {
+                /* The handler doesn't read the body of an error response */
+                RequestExecutor.release(response);
+            }
         } catch (HttpResponseException e) {
             this.responseException = e;
         } catch (ClientProtocolException e) {
             Crashlytics.logException(e);
         } catch (IOException e) {
-            Crashlytics.logException(e);
+            /* Aborting the request throws, which isn't worth reporting */
+            if (! this.isCancelled()) {
+                Crashlytics.logException(e);
+            }
+        } finally {
+            this.request = null;
         }
 
-        if (response_string.isEmpty()) {
+        if (response_string.isEmpty() && ! this.isCancelled()) {
             Crashlytics.log(String.format("Got a null response at address %s", this.url));
         }
         return response_string;
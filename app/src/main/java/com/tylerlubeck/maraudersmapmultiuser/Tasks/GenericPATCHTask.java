@@ -5,16 +5,14 @@ import android.util.Log;
 
 import com.crashlytics.android.Crashlytics;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpParams;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -30,7 +28,8 @@ import java.io.IOException;
 public abstract class GenericPATCHTask extends AsyncTask<Void, Void, HttpResponse> {
     private enum Type {
         OBJECT,
-        ARRAY
+        ARRAY,
+        ENTITY
     }
 
     /**
@@ -42,8 +41,11 @@ public abstract class GenericPATCHTask extends AsyncTask<Void, Void, HttpRespons
     private final String url;
     private JSONObject object_data;
     private JSONArray array_data;
+    private HttpEntity entity;
     private Type type;
     private final UsernamePasswordCredentials basicAuthCredentials;
+    private int timeout_ms = RequestExecutor.DEFAULT_TIMEOUT_MS;
+    private volatile HttpRequestBase request;
 
     private GenericPATCHTask(String _url, String username, String password) {
         this.url = _url;
@@ -75,6 +77,47 @@ public abstract class GenericPATCHTask extends AsyncTask<Void, Void, HttpRespons
         Log.d("BUILDINGMAPPER", String.format("POSTing to %s", this.url));
     }
 
+    /**
+     *
+     * @param _url      The URL to POST to
+     * @param _entity   The JSON body to POST, already encoded. Streaming entities should be
+     *                      repeatable, so that the request can be retried.
+     */
+    GenericPATCHTask(String _url, HttpEntity _entity, String username, String password) {
+        this(_url, username, password);
+        this.entity = _entity;
+        this.type = Type.ENTITY;
+
+        Log.d("BUILDINGMAPPER", String.format("POSTing to %s", this.url));
+    }
+
+    /**
+     * Start the request on the shared request pool
+     * @param priority  How urgent the request is
+     */
+    public void executeWithPriority(RequestExecutor.Priority priority) {
+        this.executeOnExecutor(RequestExecutor.forPriority(priority));
+    }
+
+    /**
+     * @param _timeout_ms   How long to wait to connect, and between reads, before giving up
+     */
+    public void setTimeout(int _timeout_ms) {
+        this.timeout_ms = _timeout_ms;
+    }
+
+    /**
+     * Cancel the task, and abort the request if it has already been sent.
+     *      Neither of the response handlers will be called.
+     */
+    public void abort() {
+        this.cancel(true);
+        HttpRequestBase in_flight = this.request;
+        if (in_flight != null) {
+            in_flight.abort();
+        }
+    }
+
     /**
      *
      * @param voids because it needs no parameters
@@ -84,14 +127,15 @@ public abstract class GenericPATCHTask extends AsyncTask<Void, Void, HttpRespons
     protected HttpResponse doInBackground(Void... voids) {
         HttpResponse http_response = null;
         try {
-            HttpParams http_params = new BasicHttpParams();
-            HttpClient http_client = new DefaultHttpClient(http_params);
             HttpPost http_post = new HttpPost(this.url);
+            RequestExecutor.setTimeout(http_post, this.timeout_ms);
 
             if (this.type == Type.OBJECT) {
-                http_post.setEntity(new ByteArrayEntity(this.object_data.toString().getBytes("UTF8")));
+                http_post.setEntity(HttpCompression.createEntity(this.object_data.toString().getBytes("UTF8")));
             } else if (this.type == Type.ARRAY) {
-                http_post.setEntity(new ByteArrayEntity(this.array_data.toString().getBytes("UTF8")));
+                http_post.setEntity(HttpCompression.createEntity(this.array_data.toString().getBytes("UTF8")));
+            } else if (this.type == Type.ENTITY) {
+                http_post.setEntity(this.entity);
             }
             http_post.setHeader("Accept", "application/json");
             http_post.setHeader("Content-type", "application/json");
@@ -104,13 +148,23 @@ public abstract class GenericPATCHTask extends AsyncTask<Void, Void, HttpRespons
              * See here: http://django-tastypie.readthedocs.org/en/latest/resources.html#using-put-delete-patch-in-unsupported-places
              */
             http_post.addHeader("X-HTTP-Method-Override", "PATCH");
-            http_response = http_client.execute(http_post);
+            this.request = http_post;
+            http_response = RequestExecutor.execute(http_post);
+
+            /* Read the body now, so the connection goes back to the shared pool */
+            HttpEntity entity = http_response.getEntity();
+            if (entity != null) {
+                http_response.setEntity(new BufferedHttpEntity(entity));
+                entity.consumeContent();
+            }
             return http_response;
         } catch (ClientProtocolException e) {
             Crashlytics.logException(e);
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            this.request = null;
         }
         return http_response;
     }
@@ -9,16 +9,12 @@ import com.crashlytics.android.Crashlytics;
 import org.apache.http.HttpResponse;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpParams;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -57,6 +53,8 @@ public abstract class GenericPOSTAPIKeyTask extends AsyncTask<Void, Void, String
     private HttpResponseException responseException;
     private String username;
     private String password;
+    private int timeout_ms = RequestExecutor.DEFAULT_TIMEOUT_MS;
+    private volatile HttpRequestBase request;
 
     private GenericPOSTAPIKeyTask(String _url, String username, String password) {
         this.username = username;
@@ -92,6 +90,33 @@ public abstract class GenericPOSTAPIKeyTask extends AsyncTask<Void, Void, String
         this.type = Type.OBJECT;
     }
 
+    /**
+     * Start the request on the shared request pool
+     * @param priority  How urgent the request is
+     */
+    public void executeWithPriority(RequestExecutor.Priority priority) {
+        this.executeOnExecutor(RequestExecutor.forPriority(priority));
+    }
+
+    /**
+     * @param _timeout_ms   How long to wait to connect, and between reads, before giving up
+     */
+    public void setTimeout(int _timeout_ms) {
+        this.timeout_ms = _timeout_ms;
+    }
+
+    /**
+     * Cancel the task, and abort the request if it has already been sent.
+     *      Neither of the response handlers will be called.
+     */
+    public void abort() {
+        this.cancel(true);
+        HttpRequestBase in_flight = this.request;
+        if (in_flight != null) {
+            in_flight.abort();
+        }
+    }
+
     /**
      *
      * @param voids because it needs no parameters
@@ -102,20 +127,25 @@ public abstract class GenericPOSTAPIKeyTask extends AsyncTask<Void, Void, String
         HttpResponse http_response;
         String response_string = "";
         try {
-            HttpParams http_params = new BasicHttpParams();
-            HttpClient http_client = new DefaultHttpClient(http_params);
             HttpPost http_post = new HttpPost(this.url);
+            RequestExecutor.setTimeout(http_post, this.timeout_ms);
             if (this.type == Type.ARRAY) {
-                http_post.setEntity(new ByteArrayEntity(this.array_data.toString().getBytes("UTF8")));
+                http_post.setEntity(HttpCompression.createEntity(this.array_data.toString().getBytes("UTF8")));
             } else if (this.type == Type.OBJECT) {
-                http_post.setEntity(new ByteArrayEntity(this.object_data.toString().getBytes("UTF8")));
+                http_post.setEntity(HttpCompression.createEntity(this.object_data.toString().getBytes("UTF8")));
             }
             http_post.setHeader("Accept", "application/json");
             http_post.setHeader("Content-type", "application/json");
             http_post.setHeader("Authorization", String.format("ApiKey %s:%s", this.username, this.password));
 
-            http_response = http_client.execute(http_post);
-            response_string = new BasicResponseHandler().handleResponse(http_response);
+            this.request = http_post;
+            http_response = RequestExecutor.execute(http_post);
+            try {
+                response_string = new BasicResponseHandler().handleResponse(http_response);
+            } finally {
+                /* The handler doesn't read the body of an error response */
+                RequestExecutor.release(http_response);
+            }
 
         } catch (HttpResponseException e) {
             this.responseException = e;
@@ -124,6 +154,8 @@ public abstract class GenericPOSTAPIKeyTask extends AsyncTask<Void, Void, String
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            this.request = null;
         }
         return response_string;
     }
@@ -0,0 +1,242 @@
+package com.tylerlubeck.maraudersmapmultiuser.Tasks;
+
+import android.util.Log;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Transparent compression for the request tasks.
+ *
+ * Request bodies of at least MIN_COMPRESS_BYTES are gzipped. Smaller ones aren't worth the
+ * gzip header and the CPU time. Responses are requested with gzip or deflate, and
+ * decompressed before anybody reads them.
+ *
+ * Not every server takes gzipped request bodies. A gzipped request answered with 400 or 415 is
+ * sent again uncompressed, and if the server takes it that way, request bodies are not gzipped
+ * again for the rest of the process. Both the request tasks and the GzipRequestInterceptor
+ * go by the same answer.
+ */
+public class HttpCompression {
+    public final static int MIN_COMPRESS_BYTES = 1024;
+    final static String ACCEPT_ENCODING = "gzip, deflate";
+
+    /* Set once the server has turned down a gzipped body that it then took uncompressed */
+    private static volatile boolean requests_rejected;
+
+    private HttpCompression() {}
+
+    /**
+     * @return whether request bodies are gzipped at all
+     */
+    public static boolean isCompressingRequests() {
+        return ! requests_rejected;
+    }
+
+    /**
+     * @param status    The status code a gzipped request was answered with
+     * @return whether the server may not have understood the gzipped body
+     */
+    public static boolean isRejection(int status) {
+        return status == HttpStatus.SC_BAD_REQUEST || status == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE;
+    }
+
+    /**
+     * Remember how the server answered a request sent again uncompressed after a rejection.
+     *      If it took the body this time, the gzip was the problem, so stop gzipping. If not,
+     *      the body itself was rejected and gzip stays on.
+     * @param status    The status code the uncompressed request was answered with
+     */
+    public static void rememberUncompressedResult(int status) {
+        if (! isRejection(status) && ! requests_rejected) {
+            Log.d("MARAUDERSMAP", "Server doesn't accept gzipped requests, sending them uncompressed");
+            requests_rejected = true;
+        }
+    }
+
+    /**
+     * @param body  The bytes to send
+     * @return an entity holding the body, gzipped if it is big enough and the server takes gzip
+     * @throws IOException  If compressing fails
+     */
+    static HttpEntity createEntity(byte[] body) throws IOException {
+        ByteArrayEntity entity = new ByteArrayEntity(body);
+        if (body.length < MIN_COMPRESS_BYTES || requests_rejected) {
+            return entity;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        try {
+            gzip.write(body);
+        } finally {
+            gzip.close();
+        }
+        return new GzippedEntity(compressed.toByteArray(), entity);
+    }
+
+    /**
+     * @param entity    A streamed body, of unknown length
+     * @return an entity that gzips the body as it is written, or the body itself if the server
+     *      doesn't take gzip
+     */
+    public static HttpEntity compress(HttpEntity entity) {
+        if (requests_rejected) {
+            return entity;
+        }
+        return new CompressingEntity(entity);
+    }
+
+    /**
+     * @param entity    A request body
+     * @return the body before it was gzipped, or null if it wasn't gzipped here
+     */
+    static HttpEntity uncompressed(HttpEntity entity) {
+        if (entity instanceof GzippedEntity) {
+            return ((GzippedEntity) entity).original;
+        } else if (entity instanceof CompressingEntity) {
+            return ((CompressingEntity) entity).getWrappedEntity();
+        }
+        return null;
+    }
+
+    /**
+     * Ask for compressed responses on every request the client sends, and decompress them
+     * @param client    The client to install the interceptors on
+     */
+    static void install(DefaultHttpClient client) {
+        client.addRequestInterceptor(new HttpRequestInterceptor() {
+            @Override
+            public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+                if (! request.containsHeader("Accept-Encoding")) {
+                    request.addHeader("Accept-Encoding", ACCEPT_ENCODING);
+                }
+            }
+        });
+        client.addResponseInterceptor(new HttpResponseInterceptor() {
+            @Override
+            public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+                HttpEntity entity = response.getEntity();
+                if (entity == null || entity.getContentEncoding() == null) {
+                    return;
+                }
+                for (HeaderElement element : entity.getContentEncoding().getElements()) {
+                    if (element.getName().equalsIgnoreCase("gzip")) {
+                        response.setEntity(new DecompressingEntity(entity, true));
+                        return;
+                    } else if (element.getName().equalsIgnoreCase("deflate")) {
+                        response.setEntity(new DecompressingEntity(entity, false));
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * A request body that was gzipped up front, keeping the body it was made from
+     */
+    private static class GzippedEntity extends ByteArrayEntity {
+        private final HttpEntity original;
+
+        GzippedEntity(byte[] compressed, HttpEntity _original) {
+            super(compressed);
+            this.original = _original;
+            this.setContentEncoding("gzip");
+        }
+    }
+
+    /**
+     * A request entity that gzips its content as it is written.
+     *      The compressed length isn't known up front, so it is sent chunked.
+     */
+    private static class CompressingEntity extends HttpEntityWrapper {
+        CompressingEntity(HttpEntity _entity) {
+            super(_entity);
+        }
+
+        HttpEntity getWrappedEntity() {
+            return this.wrappedEntity;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            this.wrappedEntity.writeTo(gzip);
+            /* Finish rather than close, since the connection owns the stream */
+            gzip.finish();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            this.writeTo(compressed);
+            return new ByteArrayInputStream(compressed.toByteArray());
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return true;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return new BasicHeader(HTTP.CONTENT_ENCODING, "gzip");
+        }
+    }
+
+    /**
+     * A response entity that decompresses its content as it is read
+     */
+    private static class DecompressingEntity extends HttpEntityWrapper {
+        private final boolean gzip;
+
+        DecompressingEntity(HttpEntity _entity, boolean _gzip) {
+            super(_entity);
+            this.gzip = _gzip;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            InputStream content = this.wrappedEntity.getContent();
+            return this.gzip ? new GZIPInputStream(content) : new InflaterInputStream(content);
+        }
+
+        /* The decompressed length isn't known up front */
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return null;
+        }
+    }
+}
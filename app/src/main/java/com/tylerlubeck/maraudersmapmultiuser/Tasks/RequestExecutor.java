@@ -0,0 +1,444 @@
+package com.tylerlubeck.maraudersmapmultiuser.Tasks;
+
+import com.tylerlubeck.maraudersmapmultiuser.API.NetworkMetrics;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs every network request in the app on one small, prioritized thread pool, through one
+ * shared HTTP client.
+ *
+ * The client asks for, and transparently decompresses, compressed responses. Requests sent
+ * with {@link #execute(HttpRequestBase)} are recorded in NetworkMetrics once their response
+ * has been read, and sent again uncompressed if the server turns down their gzipped body.
+ *
+ * Waiting requests are run in priority order, and in the order they were submitted within a
+ * priority. BULK requests are also run one at a time, so a slow mapping upload can only ever
+ * hold one of the pool's threads; everything else can overtake it.
+ */
+public class RequestExecutor {
+    public enum Priority {
+        /* Someone is waiting on the answer, e.g. locating the user */
+        HIGH,
+        /* Account and device housekeeping */
+        NORMAL,
+        /* Large uploads that nobody is waiting on */
+        BULK
+    }
+
+    final static int POOL_SIZE = 3;
+    final static int KEEP_ALIVE_SECONDS = 30;
+    final static int MAX_CONNECTIONS = 6;
+    public final static int DEFAULT_TIMEOUT_MS = 15 * 1000;
+    /* Where a response's CountingEntity is kept in its request's context */
+    final static String RESPONSE_COUNTER = "maraudersmap.response_counter";
+
+    private static final AtomicLong next_sequence = new AtomicLong();
+
+    private static final ThreadPoolExecutor pool = createPool();
+    private static final Executor high = new PriorityExecutor(Priority.HIGH);
+    private static final Executor normal = new PriorityExecutor(Priority.NORMAL);
+    private static final Executor bulk = new SerialExecutor(new PriorityExecutor(Priority.BULK));
+
+    private static HttpClient httpClient;
+
+    private RequestExecutor() {}
+
+    /**
+     * @param priority  How urgent the requests are
+     * @return an Executor that runs requests on the pool at the given priority
+     */
+    public static Executor forPriority(Priority priority) {
+        switch (priority) {
+            case HIGH:
+                return high;
+            case BULK:
+                return bulk;
+            default:
+                return normal;
+        }
+    }
+
+    /**
+     * @return the HTTP client shared by every request task, creating it on first use
+     */
+    public static synchronized HttpClient getHttpClient() {
+        if (httpClient == null) {
+            HttpParams params = new BasicHttpParams();
+            ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+            ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS));
+            HttpConnectionParams.setConnectionTimeout(params, DEFAULT_TIMEOUT_MS);
+            HttpConnectionParams.setSoTimeout(params, DEFAULT_TIMEOUT_MS);
+
+            SchemeRegistry registry = new SchemeRegistry();
+            registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+            registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+            ClientConnectionManager manager = new ThreadSafeClientConnManager(params, registry);
+            DefaultHttpClient client = new DefaultHttpClient(manager, params);
+            /* Added before decompression, so it counts the bytes that came over the wire */
+            client.addResponseInterceptor(new HttpResponseInterceptor() {
+                @Override
+                public void process(HttpResponse response, HttpContext context) {
+                    HttpEntity entity = response.getEntity();
+                    if (entity != null) {
+                        CountingEntity counter = new CountingEntity(entity);
+                        response.setEntity(counter);
+                        context.setAttribute(RESPONSE_COUNTER, counter);
+                    }
+                }
+            });
+            HttpCompression.install(client);
+            httpClient = client;
+        }
+        return httpClient;
+    }
+
+    /**
+     * Give up on a request if it takes longer than a timeout to connect, or between reads
+     * @param request       The request to limit
+     * @param timeout_ms    The timeout, in milliseconds
+     */
+    static void setTimeout(HttpRequestBase request, int timeout_ms) {
+        HttpParams params = request.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, timeout_ms);
+        HttpConnectionParams.setSoTimeout(params, timeout_ms);
+    }
+
+    /**
+     * Send a request through the shared client, recording it in NetworkMetrics.
+     *      The request is recorded once its response has been read to the end, closed or
+     *      consumed, so the latency covers the whole body; see {@link #release(HttpResponse)}.
+     * @param request   The request to send
+     * @return the response, once its headers have arrived
+     * @throws IOException  If the request fails or is aborted
+     */
+    static HttpResponse execute(HttpRequestBase request) throws IOException {
+        Header override = request.getFirstHeader("X-HTTP-Method-Override");
+        String method = override == null ? request.getMethod() : override.getValue();
+        long request_bytes = 0;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            request_bytes = entity == null ? 0 : entity.getContentLength();
+        }
+
+        HttpContext context = new BasicHttpContext();
+        long start = System.nanoTime();
+        HttpResponse response;
+        try {
+            response = getHttpClient().execute(request, context);
+        } catch (IOException e) {
+            NetworkMetrics.getInstance().record(method, request.getURI().toString(),
+                                                (System.nanoTime() - start) / 1000000,
+                                                request_bytes, -1, NetworkMetrics.NO_RESPONSE);
+            throw e;
+        }
+
+        int status = response.getStatusLine().getStatusCode();
+        if (response.getEntity() == null) {
+            NetworkMetrics.getInstance().record(method, request.getURI().toString(),
+                                                (System.nanoTime() - start) / 1000000,
+                                                request_bytes, 0, status);
+        } else {
+            response.setEntity(new MeteredEntity(response.getEntity(), method, request.getURI().toString(),
+                                                 start, request_bytes, status,
+                                                 (CountingEntity) context.getAttribute(RESPONSE_COUNTER)));
+        }
+
+        if (HttpCompression.isRejection(status) && request instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+            HttpEntity uncompressed = HttpCompression.uncompressed(enclosing.getEntity());
+            if (uncompressed != null) {
+                release(response);
+                NetworkMetrics.getInstance().recordRetry(method, request.getURI().toString());
+                enclosing.setEntity(uncompressed);
+                HttpResponse retry = execute(request);
+                HttpCompression.rememberUncompressedResult(retry.getStatusLine().getStatusCode());
+                return retry;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Finish with a response whose body may not have been read, e.g. after BasicResponseHandler
+     *      turned down an error status. Frees the connection, and records the request.
+     * @param response  The response, or null
+     * @throws IOException  If the rest of the body can't be read
+     */
+    static void release(HttpResponse response) throws IOException {
+        if (response != null && response.getEntity() != null) {
+            response.getEntity().consumeContent();
+        }
+    }
+
+    /**
+     * A response body as it came over the wire, counting the bytes read from it
+     */
+    private static class CountingEntity extends HttpEntityWrapper {
+        private volatile long count;
+
+        CountingEntity(HttpEntity _entity) {
+            super(_entity);
+        }
+
+        long getCount() {
+            return this.count;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(this.wrappedEntity.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        CountingEntity.this.count++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        CountingEntity.this.count += read;
+                    }
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            InputStream in = this.getContent();
+            try {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * A response body that records its request in NetworkMetrics, once, when it has been read
+     *      to the end, closed or consumed
+     */
+    private static class MeteredEntity extends HttpEntityWrapper {
+        private final String method;
+        private final String url;
+        private final long start;
+        private final long request_bytes;
+        private final int status;
+        private final CountingEntity counter;
+        private boolean recorded;
+
+        MeteredEntity(HttpEntity _entity, String _method, String _url, long _start, long _request_bytes,
+                      int _status, CountingEntity _counter) {
+            super(_entity);
+            this.method = _method;
+            this.url = _url;
+            this.start = _start;
+            this.request_bytes = _request_bytes;
+            this.status = _status;
+            this.counter = _counter;
+        }
+
+        synchronized void finish() {
+            if (this.recorded) {
+                return;
+            }
+            this.recorded = true;
+            NetworkMetrics.getInstance().record(this.method, this.url, (System.nanoTime() - this.start) / 1000000,
+                                                this.request_bytes,
+                                                this.counter == null ? -1 : this.counter.getCount(),
+                                                this.status);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(this.wrappedEntity.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b < 0) {
+                        MeteredEntity.this.finish();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read < 0) {
+                        MeteredEntity.this.finish();
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        MeteredEntity.this.finish();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            super.writeTo(out);
+            this.finish();
+        }
+
+        @Override
+        public void consumeContent() throws IOException {
+            try {
+                super.consumeContent();
+            } finally {
+                this.finish();
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createPool() {
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Request #" + this.count.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                                                             KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                                             new PriorityBlockingQueue<Runnable>(),
+                                                             factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Submits to the pool at a fixed priority
+     */
+    private static class PriorityExecutor implements Executor {
+        private final Priority priority;
+
+        PriorityExecutor(Priority _priority) {
+            this.priority = _priority;
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            pool.execute(new PrioritizedRunnable(runnable, this.priority, next_sequence.getAndIncrement()));
+        }
+    }
+
+    /**
+     * Hands runnables to another executor one at a time, in the order they were submitted
+     */
+    private static class SerialExecutor implements Executor {
+        private final Executor executor;
+        private final ArrayDeque<Runnable> waiting = new ArrayDeque<Runnable>();
+        private Runnable active;
+
+        SerialExecutor(Executor _executor) {
+            this.executor = _executor;
+        }
+
+        @Override
+        public synchronized void execute(final Runnable runnable) {
+            this.waiting.offer(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runnable.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (this.active == null) {
+                this.scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            this.active = this.waiting.poll();
+            if (this.active != null) {
+                this.executor.execute(this.active);
+            }
+        }
+    }
+
+    /**
+     * Orders the pool's queue by priority, then by submission order
+     */
+    private static class PrioritizedRunnable implements Runnable, Comparable<PrioritizedRunnable> {
+        private final Runnable runnable;
+        private final Priority priority;
+        private final long sequence;
+
+        PrioritizedRunnable(Runnable _runnable, Priority _priority, long _sequence) {
+            this.runnable = _runnable;
+            this.priority = _priority;
+            this.sequence = _sequence;
+        }
+
+        @Override
+        public void run() {
+            this.runnable.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedRunnable other) {
+            int by_priority = this.priority.compareTo(other.priority);
+            if (by_priority != 0) {
+                return by_priority;
+            }
+            return this.sequence < other.sequence ? -1 : (this.sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
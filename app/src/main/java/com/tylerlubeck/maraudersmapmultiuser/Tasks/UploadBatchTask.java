@@ -0,0 +1,45 @@
+package com.tylerlubeck.maraudersmapmultiuser.Tasks;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+
+/**
+ * PATCHes a batch of access points, coalesced from many locations, to the server in one
+ * tastypie bulk request, and reports how the server answered.
+ */
+public class UploadBatchTask extends GenericPATCHTask {
+
+    /**
+     * Told how the server answered
+     */
+    public interface Listener {
+        /**
+         * @param status    The HTTP status code of the response, or 0 if there was no response
+         */
+        void onBatchUploaded(int status);
+    }
+
+    private final Listener listener;
+
+    /**
+     *
+     * @param _url      The URL to PATCH to
+     * @param _data     The bulk request, with the access points under "objects"
+     * @param username  The username to authenticate with
+     * @param password  The password to authenticate with
+     * @param _listener Told how the server answered
+     */
+    public UploadBatchTask(String _url, HttpEntity _data, String username, String password,
+                           Listener _listener) {
+        super(_url, _data, username, password);
+        this.listener = _listener;
+    }
+
+    /**
+     * @param response The HTTPResponse returned by the PATCH, or null if it failed
+     */
+    @Override
+    void processData(HttpResponse response) {
+        this.listener.onBatchUploaded(response == null ? 0 : response.getStatusLine().getStatusCode());
+    }
+}
@@ -0,0 +1,494 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+import com.tylerlubeck.maraudersmapmultiuser.API.NetworkMetrics;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPointJsonWriter;
+import com.tylerlubeck.maraudersmapmultiuser.Tasks.HttpCompression;
+import com.tylerlubeck.maraudersmapmultiuser.Tasks.RequestExecutor;
+import com.tylerlubeck.maraudersmapmultiuser.Tasks.UploadBatchTask;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * A persistent queue of mapped fingerprints waiting to be uploaded.
+ *
+ * Each mapped location is streamed on to the end of a file as one line holding the JSON
+ *      array of its access points, so nothing is lost if an upload fails or the app is killed.
+ *      Locations are then coalesced in to a single tastypie bulk PATCH of up to MAX_BATCH_LOCATIONS at a time.
+ *      A batch is sent as soon as that many are waiting, or FLUSH_DELAY_MS after the first
+ *      one was queued, whichever comes first. Batches are streamed from the file in to the
+ *      request, so memory use doesn't grow with the size of the upload. Failed batches are
+ *      retried with exponential backoff. Whenever the device comes back online, anything
+ *      waiting is retried straight away.
+ *
+ * A batch the server rejects as malformed is kept, and sent again in halves until the location
+ *      it won't take has been sent on its own. Only that location is taken out of the queue,
+ *      and it is set aside in DEAD_LETTER_FILE rather than thrown away.
+ *
+ * Credentials given to enqueue() are only kept in memory. Until there are some, the username
+ *      and password saved in the settings are used, so locations left over from an earlier run
+ *      are uploaded when the app starts or the device comes back online.
+ *
+ * The queue's state, and every change to the file, stays on the queue's own thread. The
+ *      batch in flight is read by the request thread, but its lines aren't removed until the
+ *      upload has finished.
+ */
+public class UploadQueue {
+    final static String QUEUE_FILE = "upload_queue";
+    final static String DEAD_LETTER_FILE = "upload_rejected";
+    final static int MAX_BATCH_LOCATIONS = 20;
+    final static long FLUSH_DELAY_MS = 60 * 1000;
+    final static long INITIAL_RETRY_DELAY_MS = 5 * 1000;
+    final static long MAX_RETRY_DELAY_MS = 10 * 60 * 1000;
+    /* The settings the stored credentials are read from; see preferences.xml */
+    final static String USERNAME_PREFERENCE = "username";
+    final static String PASSWORD_PREFERENCE = "password";
+
+    /**
+     * Sends one batch to the server
+     */
+    interface Uploader {
+        /**
+         * @param endpoint  The URL to PATCH to
+         * @param batch     The bulk request
+         * @param username  The username to authenticate with
+         * @param password  The password to authenticate with
+         * @param listener  Told how the server answered, on any thread
+         */
+        void upload(String endpoint, HttpEntity batch, String username, String password,
+                    UploadBatchTask.Listener listener);
+    }
+
+    private static UploadQueue instance;
+
+    private final File file;
+    private final File dead_letter_file;
+    private final String endpoint;
+    private final SharedPreferences preferences;
+    private final Handler handler;
+    private final Uploader uploader;
+
+    /* Only touched on the queue's thread */
+    private int num_pending;
+    /* Shrinks while looking for a location the server won't take */
+    private int batch_limit;
+    private boolean flushing;
+    private boolean flush_scheduled;
+    private long retry_delay_ms;
+    private String username;
+    private String password;
+    private final AccessPointJsonWriter jsonWriter = new AccessPointJsonWriter();
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            UploadQueue.this.flush_scheduled = false;
+            UploadQueue.this.flushNow();
+        }
+    };
+
+    /**
+     * @param context   The application context
+     */
+    private UploadQueue(Context context) {
+        this(new File(context.getFilesDir(), QUEUE_FILE),
+             context.getString(R.string.accesspoint_endpoint),
+             PreferenceManager.getDefaultSharedPreferences(context),
+             startQueueThread(),
+             new TaskUploader());
+
+        this.handler.post(new Runnable() {
+            @Override
+            public void run() {
+                UploadQueue.this.num_pending = UploadQueue.this.countLines();
+            }
+        });
+
+        /* Registered for as long as the process lives, like the queue itself */
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (! intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)) {
+                    UploadQueue.this.retryNow();
+                }
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION), null, this.handler);
+    }
+
+    /**
+     * @param _file         The queue file
+     * @param _endpoint     The URL to PATCH batches to
+     * @param _preferences  Where the stored credentials are read from
+     * @param _handler      The queue's thread
+     * @param _uploader     Sends the batches
+     */
+    UploadQueue(File _file, String _endpoint, SharedPreferences _preferences, Handler _handler,
+                Uploader _uploader) {
+        this.file = _file;
+        this.dead_letter_file = new File(_file.getParentFile(), DEAD_LETTER_FILE);
+        this.endpoint = _endpoint;
+        this.preferences = _preferences;
+        this.handler = _handler;
+        this.uploader = _uploader;
+        this.retry_delay_ms = INITIAL_RETRY_DELAY_MS;
+        this.batch_limit = MAX_BATCH_LOCATIONS;
+    }
+
+    private static Handler startQueueThread() {
+        HandlerThread thread = new HandlerThread("UploadQueue");
+        thread.start();
+        return new Handler(thread.getLooper());
+    }
+
+    /**
+     * @param context   Any context; only the application context is held on to
+     * @return the process-wide queue, creating it on first use
+     */
+    public static synchronized UploadQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new UploadQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a location's access points for upload
+     * @param accessPoints  The access points seen at the location
+     * @param _username     The username to authenticate with
+     * @param _password     The password to authenticate with
+     */
+    public void enqueue(final List<AccessPoint> accessPoints, final String _username, final String _password) {
+        this.handler.post(new Runnable() {
+            @Override
+            public void run() {
+                UploadQueue outer = UploadQueue.this;
+                outer.username = _username;
+                outer.password = _password;
+                if (! outer.append(accessPoints)) {
+                    return;
+                }
+                outer.num_pending++;
+                if (outer.num_pending >= MAX_BATCH_LOCATIONS) {
+                    outer.handler.removeCallbacks(outer.flushRunnable);
+                    outer.flush_scheduled = false;
+                    outer.flushNow();
+                } else {
+                    outer.scheduleFlush(FLUSH_DELAY_MS);
+                }
+            }
+        });
+    }
+
+    /**
+     * Upload everything waiting, without waiting for the batch to fill up.
+     *      Called when the app starts; use it too when a mapping session ends.
+     */
+    public void flush() {
+        this.handler.post(new Runnable() {
+            @Override
+            public void run() {
+                UploadQueue.this.handler.removeCallbacks(UploadQueue.this.flushRunnable);
+                UploadQueue.this.flush_scheduled = false;
+                UploadQueue.this.flushNow();
+            }
+        });
+    }
+
+    /**
+     * The network is back, so skip whatever is left of the backoff.
+     *      Runs on the queue's thread.
+     */
+    private void retryNow() {
+        if (this.num_pending == 0) {
+            return;
+        }
+        this.retry_delay_ms = INITIAL_RETRY_DELAY_MS;
+        this.handler.removeCallbacks(this.flushRunnable);
+        this.flush_scheduled = false;
+        this.flushNow();
+    }
+
+    private void scheduleFlush(long delay_ms) {
+        if (this.flush_scheduled) {
+            return;
+        }
+        this.flush_scheduled = true;
+        this.handler.postDelayed(this.flushRunnable, delay_ms);
+    }
+
+    /**
+     * Send the oldest batch, if one isn't already on its way.
+     *      The batch is streamed from the queue file straight in to the request.
+     *      Runs on the queue's thread.
+     */
+    void flushNow() {
+        if (this.flushing) {
+            return;
+        }
+        String batch_username = this.username;
+        String batch_password = this.password;
+        if (batch_username == null) {
+            batch_username = this.preferences.getString(USERNAME_PREFERENCE, "");
+            batch_password = this.preferences.getString(PASSWORD_PREFERENCE, "");
+            if (batch_username.isEmpty()) {
+                return;
+            }
+        }
+        this.num_pending = this.countLines();
+        if (this.num_pending == 0) {
+            return;
+        }
+
+        final int batch_size = Math.min(this.batch_limit, this.num_pending);
+        this.flushing = true;
+        this.uploader.upload(this.endpoint, HttpCompression.compress(new BatchEntity(this.file, batch_size)),
+                             batch_username, batch_password, new UploadBatchTask.Listener() {
+                    @Override
+                    public void onBatchUploaded(final int status) {
+                        UploadQueue.this.handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                UploadQueue.this.onBatchUploaded(status, batch_size);
+                            }
+                        });
+                    }
+                });
+    }
+
+    private void onBatchUploaded(int status, int batch_size) {
+        this.flushing = false;
+        if (status >= 200 && status < 300) {
+            Log.d("MARAUDERSMAP", String.format("Uploaded %d locations", batch_size));
+            this.retry_delay_ms = INITIAL_RETRY_DELAY_MS;
+            this.batch_limit = Math.min(this.batch_limit * 2, MAX_BATCH_LOCATIONS);
+            this.removeLines(batch_size, null);
+            if (this.num_pending > 0) {
+                this.flushNow();
+            }
+        } else if (status == HttpStatus.SC_BAD_REQUEST && batch_size > 1) {
+            /* Something in the batch is malformed; keep all of it, and narrow down which */
+            Log.e("MARAUDERSMAP", String.format("Server rejected %d locations, trying %d", batch_size, batch_size / 2));
+            this.batch_limit = batch_size / 2;
+            this.scheduleFlush(this.retry_delay_ms);
+        } else if (status == HttpStatus.SC_BAD_REQUEST) {
+            /* The server will never take this one location, so set it aside rather than block the queue */
+            Crashlytics.log("Setting aside a location the server rejected");
+            this.batch_limit = MAX_BATCH_LOCATIONS;
+            this.removeLines(1, this.dead_letter_file);
+            if (this.num_pending > 0) {
+                this.flushNow();
+            }
+        } else {
+            Log.e("MARAUDERSMAP", String.format("Upload failed, retrying in %d ms", this.retry_delay_ms));
+            NetworkMetrics.getInstance().recordRetry("PATCH", this.endpoint);
+            this.scheduleFlush(this.retry_delay_ms);
+            this.retry_delay_ms = Math.min(this.retry_delay_ms * 2, MAX_RETRY_DELAY_MS);
+        }
+    }
+
+    private boolean append(List<AccessPoint> accessPoints) {
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), "UTF-8"));
+            try {
+                this.jsonWriter.writeArray(writer, accessPoints);
+                writer.write('\n');
+            } finally {
+                writer.close();
+            }
+            return true;
+        } catch (IOException e) {
+            Crashlytics.logException(e);
+            return false;
+        }
+    }
+
+    private int countLines() {
+        if (! this.file.exists()) {
+            return 0;
+        }
+        int count = 0;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (! line.isEmpty()) {
+                        count++;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Crashlytics.logException(e);
+        }
+        return count;
+    }
+
+    /**
+     * Drop the oldest lines, by copying the rest to a new file and swapping it in
+     * @param count         How many lines to drop
+     * @param dead_letter   A file to add the dropped lines to, or null if they have been uploaded
+     */
+    private void removeLines(int count, File dead_letter) {
+        File replacement = new File(this.file.getPath() + ".tmp");
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), "UTF-8"));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(replacement), "UTF-8"));
+            Writer rejected = dead_letter == null ? null
+                    : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dead_letter, true), "UTF-8"));
+            int remaining = 0;
+            try {
+                int skipped = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    if (skipped < count) {
+                        skipped++;
+                        if (rejected != null) {
+                            rejected.write(line);
+                            rejected.write('\n');
+                        }
+                        continue;
+                    }
+                    writer.write(line);
+                    writer.write('\n');
+                    remaining++;
+                }
+            } finally {
+                reader.close();
+                writer.close();
+                if (rejected != null) {
+                    rejected.close();
+                }
+            }
+            if (! replacement.renameTo(this.file)) {
+                throw new IOException("Could not replace the upload queue");
+            }
+            this.num_pending = remaining;
+        } catch (IOException e) {
+            Crashlytics.logException(e);
+        }
+    }
+
+    /**
+     * Sends each batch with an UploadBatchTask, at BULK priority
+     */
+    private static class TaskUploader implements Uploader {
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void upload(String endpoint, HttpEntity batch, String username, String password,
+                           UploadBatchTask.Listener listener) {
+            final UploadBatchTask task = new UploadBatchTask(endpoint, batch, username, password, listener);
+            /* AsyncTasks have to be started from the main thread */
+            this.mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    task.executeWithPriority(RequestExecutor.Priority.BULK);
+                }
+            });
+        }
+    }
+
+    /**
+     * The body of a bulk PATCH, streamed from the first lines of the queue file.
+     *      Each line is a JSON array of access points, so its contents are copied in to the
+     *      "objects" array without parsing them. Only one line is in memory at a time.
+     */
+    private static class BatchEntity extends AbstractHttpEntity {
+        private final File file;
+        private final int num_lines;
+
+        BatchEntity(File _file, int _num_lines) {
+            this.file = _file;
+            this.num_lines = _num_lines;
+            this.setContentType("application/json");
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), "UTF-8"));
+            try {
+                writer.write("{\"objects\":[");
+                boolean first = true;
+                int written = 0;
+                String line;
+                while (written < this.num_lines && (line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    written++;
+                    /* Strip the line's own brackets; skip locations with no access points */
+                    if (line.length() <= 2) {
+                        continue;
+                    }
+                    if (! first) {
+                        writer.write(',');
+                    }
+                    writer.write(line, 1, line.length() - 2);
+                    first = false;
+                }
+                writer.write("]}");
+                writer.flush();
+            } finally {
+                reader.close();
+            }
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            this.writeTo(content);
+            return new ByteArrayInputStream(content.toByteArray());
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
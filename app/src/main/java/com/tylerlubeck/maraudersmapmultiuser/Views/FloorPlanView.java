@@ -0,0 +1,185 @@
+package com.tylerlubeck.maraudersmapmultiuser.Views;
+
+import android.content.Context;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.widget.ImageView;
+
+/**
+ * An ImageView that can be pinched to zoom, dragged to pan and double tapped to zoom in or back
+ * out. The image starts out centered and fitted to the view, and can never be zoomed out past
+ * that or dragged off the view.
+ *
+ * The zoom is applied through the image matrix, so getImageMatrix() always says how the
+ * drawable is currently shown.
+ */
+public class FloorPlanView extends ImageView {
+    final static float MAX_ZOOM = 8;
+    final static float DOUBLE_TAP_ZOOM = 3;
+
+    private final Matrix matrix = new Matrix();
+    private final float[] values = new float[9];
+    private final RectF image_rect = new RectF();
+    private float fitted_scale = 1;
+    private ScaleGestureDetector scaleDetector;
+    private GestureDetector gestureDetector;
+
+    public FloorPlanView(Context context) {
+        super(context);
+        this.initialize(context);
+    }
+
+    public FloorPlanView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        this.initialize(context);
+    }
+
+    public FloorPlanView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        this.initialize(context);
+    }
+
+    private void initialize(Context context) {
+        this.setScaleType(ScaleType.MATRIX);
+        this.scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+        this.gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent event) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent start, MotionEvent event, float distance_x, float distance_y) {
+                panBy(-distance_x, -distance_y);
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent event) {
+                if (getScale() > FloorPlanView.this.fitted_scale * 1.01f) {
+                    resetZoom();
+                } else {
+                    zoomBy(DOUBLE_TAP_ZOOM, event.getX(), event.getY());
+                }
+                return true;
+            }
+        });
+        this.resetZoom();
+    }
+
+    @Override
+    public void setImageDrawable(Drawable drawable) {
+        Drawable previous = this.getDrawable();
+        super.setImageDrawable(drawable);
+        /* Called by the super constructor, before there is anything to reset */
+        if (this.gestureDetector != null && ! sameSize(previous, drawable)) {
+            this.resetZoom();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int old_width, int old_height) {
+        super.onSizeChanged(width, height, old_width, old_height);
+        this.resetZoom();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = this.scaleDetector.onTouchEvent(event);
+        if (! this.scaleDetector.isInProgress()) {
+            handled = this.gestureDetector.onTouchEvent(event) || handled;
+        }
+        return handled || super.onTouchEvent(event);
+    }
+
+    /**
+     * Fit the image to the view again, centered
+     */
+    public void resetZoom() {
+        Drawable drawable = this.getDrawable();
+        int content_width = this.getContentWidth();
+        int content_height = this.getContentHeight();
+        this.matrix.reset();
+        if (drawable == null || drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0
+                || content_width <= 0 || content_height <= 0) {
+            this.fitted_scale = 1;
+            this.setImageMatrix(this.matrix);
+            return;
+        }
+        this.fitted_scale = Math.min(content_width / (float) drawable.getIntrinsicWidth(),
+                                     content_height / (float) drawable.getIntrinsicHeight());
+        this.matrix.setScale(this.fitted_scale, this.fitted_scale);
+        this.matrix.postTranslate((content_width - drawable.getIntrinsicWidth() * this.fitted_scale) / 2,
+                                  (content_height - drawable.getIntrinsicHeight() * this.fitted_scale) / 2);
+        this.setImageMatrix(this.matrix);
+    }
+
+    private void zoomBy(float factor, float focus_x, float focus_y) {
+        float scale = this.getScale();
+        float target = Math.max(this.fitted_scale, Math.min(this.fitted_scale * MAX_ZOOM, scale * factor));
+        factor = target / scale;
+        this.matrix.postScale(factor, factor, focus_x - this.getPaddingLeft(), focus_y - this.getPaddingTop());
+        this.clampToView();
+    }
+
+    private void panBy(float dx, float dy) {
+        this.matrix.postTranslate(dx, dy);
+        this.clampToView();
+    }
+
+    /**
+     * Keep the image covering the view where it is big enough to, and centered where it isn't
+     */
+    private void clampToView() {
+        Drawable drawable = this.getDrawable();
+        if (drawable == null) {
+            return;
+        }
+        this.image_rect.set(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+        this.matrix.mapRect(this.image_rect);
+        this.matrix.postTranslate(clampOffset(this.image_rect.left, this.image_rect.right, this.getContentWidth()),
+                                  clampOffset(this.image_rect.top, this.image_rect.bottom, this.getContentHeight()));
+        this.setImageMatrix(this.matrix);
+    }
+
+    private static float clampOffset(float start, float end, int size) {
+        if (end - start <= size) {
+            return (size - (end - start)) / 2 - start;
+        } else if (start > 0) {
+            return -start;
+        } else if (end < size) {
+            return size - end;
+        }
+        return 0;
+    }
+
+    private float getScale() {
+        this.matrix.getValues(this.values);
+        return this.values[Matrix.MSCALE_X];
+    }
+
+    private int getContentWidth() {
+        return this.getWidth() - this.getPaddingLeft() - this.getPaddingRight();
+    }
+
+    private int getContentHeight() {
+        return this.getHeight() - this.getPaddingTop() - this.getPaddingBottom();
+    }
+
+    private static boolean sameSize(Drawable a, Drawable b) {
+        return a != null && b != null
+                && a.getIntrinsicWidth() == b.getIntrinsicWidth()
+                && a.getIntrinsicHeight() == b.getIntrinsicHeight();
+    }
+}
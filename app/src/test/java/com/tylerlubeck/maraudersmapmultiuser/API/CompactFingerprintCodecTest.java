@@ -0,0 +1,66 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactFingerprintCodecTest {
+    private static List<AccessPoint> fingerprint() {
+        ArrayList<AccessPoint> accessPoints = new ArrayList<AccessPoint>();
+        accessPoints.add(new AccessPoint("00:11:22:33:44:66", -71.4, 3.1, null));
+        accessPoints.add(new AccessPoint("00:11:22:33:44:55", -42.6, 0.9, null));
+        accessPoints.add(new AccessPoint("not a mac address", -50, 1, null));
+        return accessPoints;
+    }
+
+    @Test
+    public void fingerprintsSurviveTheRoundTrip() throws IOException {
+        byte[] bytes = CompactFingerprintCodec.encode(fingerprint(), 1429142400000L);
+        CompactFingerprintCodec.Decoded decoded = CompactFingerprintCodec.decode(bytes);
+
+        assertEquals(1429142400000L, decoded.timestamp);
+        /* The unparseable access point is dropped, and the rest come back sorted by BSSID */
+        assertEquals(2, decoded.accessPoints.size());
+        AccessPoint first = decoded.accessPoints.get(0);
+        AccessPoint second = decoded.accessPoints.get(1);
+        assertEquals(0x001122334455L, first.getBssid());
+        assertEquals(-43, first.getSignalStrength(), 0);
+        assertEquals(1.0, first.getStandardDeviation(), 0);
+        assertEquals(0x001122334466L, second.getBssid());
+        assertEquals(-71, second.getSignalStrength(), 0);
+        assertEquals(3.0, second.getStandardDeviation(), 0);
+    }
+
+    @Test
+    public void responsesSurviveTheRoundTrip() throws IOException {
+        byte[] bytes = CompactFingerprintCodec.encodeResponse(true, 300123, fingerprint(), 1429142400000L);
+        CompactFingerprintCodec.DecodedResponse decoded = CompactFingerprintCodec.decodeResponse(bytes);
+
+        assertTrue(decoded.allow_request);
+        assertEquals(300123, decoded.requestor_id);
+        assertEquals(1429142400000L, decoded.fingerprint.timestamp);
+        assertEquals(2, decoded.fingerprint.accessPoints.size());
+        assertEquals(0x001122334455L, decoded.fingerprint.accessPoints.get(0).getBssid());
+
+        byte[] denied = CompactFingerprintCodec.encodeResponse(false, 7, new ArrayList<AccessPoint>(), 0);
+        assertFalse(CompactFingerprintCodec.decodeResponse(denied).allow_request);
+    }
+
+    @Test
+    public void otherBytesAreRejected() {
+        try {
+            CompactFingerprintCodec.decode("{\"access_points\": []}".getBytes());
+            fail("decoded JSON as a compact fingerprint");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.LocateMeBody;
+import com.tylerlubeck.maraudersmapmultiuser.Models.RespondToRequestBody;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.converter.Converter;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NegotiatingClientTest {
+    /* Stands in for the JSON converter, remembering what it was asked to send */
+    private static class RecordingConverter implements Converter {
+        final ArrayList<Object> sent = new ArrayList<Object>();
+
+        @Override
+        public Object fromBody(TypedInput body, Type type) {
+            return null;
+        }
+
+        @Override
+        public TypedOutput toBody(Object object) {
+            this.sent.add(object);
+            return new TypedByteArray("application/json", new byte[0]);
+        }
+    }
+
+    /* Answers every compact request with the given status, and everything else with 200 */
+    private static class FakeServer implements Client {
+        final ArrayList<Request> requests = new ArrayList<Request>();
+        final int compact_status;
+
+        FakeServer(int _compact_status) {
+            this.compact_status = _compact_status;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            this.requests.add(request);
+            boolean compact = request.getBody() instanceof CompactConverter.CompactBody;
+            return new Response(request.getUrl(), compact ? this.compact_status : 200, "",
+                                Collections.<Header>emptyList(), new TypedByteArray("text/plain", new byte[0]));
+        }
+    }
+
+    private RecordingConverter json;
+    private CompactConverter converter;
+
+    @Before
+    public void setUp() {
+        this.json = new RecordingConverter();
+        this.converter = new CompactConverter(this.json);
+        this.converter.setEnabled(true);
+    }
+
+    private static List<AccessPoint> fingerprint() {
+        ArrayList<AccessPoint> accessPoints = new ArrayList<AccessPoint>();
+        accessPoints.add(new AccessPoint("00:11:22:33:44:55", -42.6, 0.9, null));
+        return accessPoints;
+    }
+
+    private Response send(Client client, Object object) throws IOException {
+        Request request = new Request("POST", "http://example.com/locate/", Collections.<Header>emptyList(),
+                                      this.converter.toBody(object));
+        return new NegotiatingClient(client, this.converter).execute(request);
+    }
+
+    @Test
+    public void unsupportedCompactBodiesAreResentAsTheOriginalObject() throws IOException {
+        FakeServer server = new FakeServer(NegotiatingClient.UNSUPPORTED_MEDIA_TYPE);
+        LocateMeBody body = new LocateMeBody(fingerprint());
+
+        Response response = this.send(server, body);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(2, server.requests.size());
+        assertFalse(this.converter.isEnabled());
+        /* The JSON is made from the unrounded object, not from the compact bytes */
+        assertEquals(1, this.json.sent.size());
+        assertSame(body, this.json.sent.get(0));
+    }
+
+    @Test
+    public void acceptedCompactBodiesAreSentOnce() throws IOException {
+        FakeServer server = new FakeServer(200);
+
+        this.send(server, new LocateMeBody(fingerprint()));
+
+        assertEquals(1, server.requests.size());
+        assertTrue(this.converter.isEnabled());
+        assertTrue(this.json.sent.isEmpty());
+    }
+
+    @Test
+    public void responsesAreOnlyCompactWhenTheyShareALocation() {
+        RespondToRequestBody allowed = new RespondToRequestBody(true, 12);
+        allowed.setAccessPoints(fingerprint());
+        TypedOutput compact = this.converter.toBody(allowed);
+        assertEquals(CompactFingerprintCodec.RESPONSE_MIME_TYPE, compact.mimeType());
+
+        this.converter.toBody(new RespondToRequestBody(false, 12));
+        assertEquals(1, this.json.sent.size());
+    }
+}
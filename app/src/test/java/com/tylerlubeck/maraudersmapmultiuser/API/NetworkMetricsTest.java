@@ -0,0 +1,32 @@
+package com.tylerlubeck.maraudersmapmultiuser.API;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NetworkMetricsTest {
+    @Test
+    public void numericSegmentsAreCollapsed() {
+        assertEquals("/api/v1/floor/{id}/",
+                     NetworkMetrics.normalize("http://sirius-multi-user.herokuapp.com/api/v1/floor/3/"));
+        assertEquals("/api/v1/floor/{id}/",
+                     NetworkMetrics.normalize("http://sirius-multi-user.herokuapp.com/api/v1/floor/42/"));
+        assertEquals("/api/v1/floor/{id}/image/{id}",
+                     NetworkMetrics.normalize("/api/v1/floor/3/image/7"));
+    }
+
+    @Test
+    public void otherSegmentsAreKept() {
+        assertEquals("/api/v1/user_location/me/",
+                     NetworkMetrics.normalize("https://example.com/api/v1/user_location/me/"));
+        assertEquals("/api/v1/floor/3a/", NetworkMetrics.normalize("/api/v1/floor/3a/"));
+    }
+
+    @Test
+    public void hostAndQueryAreDropped() {
+        assertEquals("/api/v1/accesspoint/",
+                     NetworkMetrics.normalize("http://example.com:8000/api/v1/accesspoint/?format=json&id=4"));
+        assertEquals("/", NetworkMetrics.normalize("http://example.com"));
+        assertEquals("/", NetworkMetrics.normalize("http://example.com/"));
+    }
+}
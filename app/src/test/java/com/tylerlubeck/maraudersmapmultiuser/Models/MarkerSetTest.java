@@ -0,0 +1,93 @@
+package com.tylerlubeck.maraudersmapmultiuser.Models;
+
+import android.graphics.Rect;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MarkerSetTest {
+    private MarkerSet markers;
+    private Rect dirty;
+
+    @Before
+    public void setUp() {
+        this.markers = new MarkerSet();
+        this.markers.setRadius(10);
+        this.dirty = new Rect();
+    }
+
+    @Test
+    public void removedIdsAreReused() {
+        int first = this.markers.add(0, 0, 1);
+        int second = this.markers.add(50, 50, 2);
+        this.markers.remove(first);
+        assertEquals(1, this.markers.size());
+
+        assertEquals(first, this.markers.add(100, 100, 3));
+        /* The marker that filled the removed one's slot still answers to its own id */
+        this.markers.move(second, 60, 60);
+        assertEquals(2, this.markers.size());
+    }
+
+    @Test
+    public void clearingFreesIdsWithoutForgettingNewOnes() {
+        int first = this.markers.add(0, 0, 1);
+        int second = this.markers.add(50, 50, 2);
+        this.markers.clear();
+        assertEquals(0, this.markers.size());
+
+        try {
+            this.markers.move(first, 10, 10);
+            fail("moved a cleared marker");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        /* Every id comes back once, and only then are new ones handed out */
+        int a = this.markers.add(0, 0, 1);
+        int b = this.markers.add(0, 0, 1);
+        int c = this.markers.add(0, 0, 1);
+        assertTrue((a == first && b == second) || (a == second && b == first));
+        assertEquals(2, c);
+        assertEquals(3, this.markers.size());
+    }
+
+    @Test
+    public void idsSurviveGrowing() {
+        int[] ids = new int[3 * MarkerSet.INITIAL_CAPACITY];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.markers.add(i, i, 1);
+        }
+        for (int i = 0; i < ids.length; i += 2) {
+            this.markers.remove(ids[i]);
+        }
+        for (int i = 1; i < ids.length; i += 2) {
+            this.markers.move(ids[i], i + 1, i + 1);
+        }
+        assertEquals(ids.length / 2, this.markers.size());
+    }
+
+    @Test
+    public void changesAreTakenOnce() {
+        this.markers.takeDirty(this.dirty);
+        assertFalse(this.markers.takeDirty(this.dirty));
+
+        int id = this.markers.add(100, 200, 1);
+        assertTrue(this.markers.takeDirty(this.dirty));
+        assertEquals(89, this.dirty.left);
+        assertEquals(189, this.dirty.top);
+        assertEquals(111, this.dirty.right);
+        assertEquals(211, this.dirty.bottom);
+        assertFalse(this.markers.takeDirty(this.dirty));
+
+        /* A move covers where the marker was and where it went */
+        this.markers.move(id, 300, 200);
+        assertTrue(this.markers.takeDirty(this.dirty));
+        assertEquals(89, this.dirty.left);
+        assertEquals(311, this.dirty.right);
+    }
+}
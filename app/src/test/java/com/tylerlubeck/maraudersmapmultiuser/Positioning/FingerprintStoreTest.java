@@ -0,0 +1,82 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FingerprintStoreTest {
+
+    private static File temporaryStore() throws IOException {
+        File file = File.createTempFile("floor", FingerprintStore.FILE_EXTENSION);
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static List<AccessPoint> seen(double strength) {
+        return Arrays.asList(new AccessPoint(0x001122334455L, strength, 1.5, 12, null),
+                             new AccessPoint(0x0011223344aaL, strength - 10, 0.25, 3, null));
+    }
+
+    @Test
+    public void appendCreatesTheStore() throws IOException {
+        File file = temporaryStore();
+        FingerprintStore.append(file, "Halligan", 2, "floor2.png", 10, 20, seen(-40), 10);
+
+        FingerprintStore store = FingerprintStore.open(file);
+        assertEquals("Halligan", store.getBuildingName());
+        assertEquals(2, store.getFloorNumber());
+        assertEquals("floor2.png", store.getImageUrl());
+        assertEquals(1, store.getLocationCount());
+        assertEquals(10, store.getX(0));
+        assertEquals(20, store.getY(0));
+        assertEquals(-1, store.getDirection(0));
+        assertEquals(2, store.getAccessPointCount(0));
+        assertEquals(0x001122334455L, store.getBssid(0, 0));
+        assertEquals(-40, store.getSignalStrength(0, 0), 0);
+        assertEquals(1.5, store.getStandardDeviation(0, 0), 0);
+        assertEquals(12, store.getSampleCount(0, 0));
+    }
+
+    @Test
+    public void appendKeepsEarlierLocations() throws IOException {
+        File file = temporaryStore();
+        FingerprintStore.append(file, "Halligan", 2, "floor2.png", 10, 20, seen(-40), 10);
+        FingerprintStore.append(file, "Halligan", 2, "floor2.png", 30, 40, seen(-60), 10);
+
+        FingerprintStore store = FingerprintStore.open(file);
+        assertEquals(2, store.getLocationCount());
+        assertEquals(10, store.getX(0));
+        assertEquals(-40, store.getSignalStrength(0, 0), 0);
+        assertEquals(0.25, store.getStandardDeviation(0, 1), 0);
+        assertEquals(3, store.getSampleCount(0, 1));
+        assertEquals(30, store.getX(1));
+        assertEquals(-70, store.getSignalStrength(1, 1), 0);
+    }
+
+    @Test
+    public void appendDropsTheOldestLocations() throws IOException {
+        File file = temporaryStore();
+        for (int i = 0; i < 5; i++) {
+            FingerprintStore.append(file, "Halligan", 2, "floor2.png", i, i, seen(-40 - i), 3);
+        }
+
+        FingerprintStore store = FingerprintStore.open(file);
+        assertEquals(3, store.getLocationCount());
+        assertEquals(2, store.getX(0));
+        assertEquals(4, store.getX(2));
+    }
+
+    @Test
+    public void storeNamesAreSafeFileNames() {
+        assertEquals("halligan_hall_2.fp", FingerprintRecorder.storeName("Halligan Hall", 2));
+        assertEquals("a_b_1.fp", FingerprintRecorder.storeName("a/b", 1));
+    }
+}
@@ -0,0 +1,98 @@
+package com.tylerlubeck.maraudersmapmultiuser.Positioning;
+
+import com.tylerlubeck.maraudersmapmultiuser.BssidTable;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.MyLocation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KnnPositioningEngineTest {
+    private static final long[] BSSIDS = { 0x001122334401L, 0x001122334402L, 0x001122334403L, 0x001122334404L };
+
+    private static List<AccessPoint> fingerprint(double... strengths) {
+        ArrayList<AccessPoint> accessPoints = new ArrayList<AccessPoint>();
+        for (int i = 0; i < strengths.length; i++) {
+            accessPoints.add(new AccessPoint(BSSIDS[i], strengths[i], 0, null));
+        }
+        return accessPoints;
+    }
+
+    private static BssidTable<AccessPoint> query(List<AccessPoint> accessPoints) {
+        BssidTable<AccessPoint> query = new BssidTable<AccessPoint>();
+        for (AccessPoint accessPoint : accessPoints) {
+            query.put(accessPoint.getBssid(), accessPoint);
+        }
+        return query;
+    }
+
+    private static double missingDistance(List<AccessPoint> accessPoints) {
+        double distance = 0;
+        for (AccessPoint accessPoint : accessPoints) {
+            double difference = accessPoint.getSignalStrength() - KnnPositioningEngine.MISSING_SIGNAL_STRENGTH;
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+    @Test
+    public void nearExactMatchesAreNeverNegative() {
+        /* Averaged readings that the corrections round to just below zero */
+        List<AccessPoint> seen = fingerprint(-57.8, -42.5, -51.8, -31.6);
+        InMemoryFingerprintSet floor = new InMemoryFingerprintSet("Halligan", 1, "floor1.png");
+        floor.addLocation(0, 0, seen);
+
+        double distance = KnnPositioningEngine.squaredDistance(query(seen), missingDistance(seen), floor, 0);
+        assertTrue("distance " + distance, distance >= 0 && distance < 1e-6);
+    }
+
+    @Test
+    public void locationsSharingNothingAreSkipped() {
+        List<AccessPoint> seen = fingerprint(-40, -50);
+        InMemoryFingerprintSet floor = new InMemoryFingerprintSet("Halligan", 1, "floor1.png");
+        floor.addLocation(0, 0, Arrays.asList(new AccessPoint(0x00aabbccddeeL, -40, 0, null)));
+
+        assertEquals(-1, KnnPositioningEngine.squaredDistance(query(seen), missingDistance(seen), floor, 0), 0);
+    }
+
+    @Test
+    public void estimateWithoutAUsableVoteIsNull() {
+        InMemoryFingerprintSet floor = new InMemoryFingerprintSet("Halligan", 1, "floor1.png");
+        floor.addLocation(10, 20, fingerprint(-40));
+        KnnPositioningEngine.Neighbours neighbours = new KnnPositioningEngine.Neighbours(KnnPositioningEngine.K);
+        neighbours.offer(floor, 0, Double.NaN);
+
+        assertNull(neighbours.estimate());
+    }
+
+    @Test
+    public void locatesTheClosestLocation() {
+        InMemoryFingerprintSet floor = new InMemoryFingerprintSet("Halligan", 2, "floor2.png");
+        floor.addLocation(100, 100, fingerprint(-40, -50, -60, -70));
+        floor.addLocation(500, 500, fingerprint(-70, -60, -50, -40));
+        KnnPositioningEngine engine = new KnnPositioningEngine();
+        engine.addFloor(floor);
+
+        MyLocation location = engine.locate(fingerprint(-41, -50, -61, -70));
+        assertNotNull(location);
+        assertEquals(2, location.getFloorNumber());
+        assertTrue(location.getXCoordinate() < 300);
+        assertTrue(location.getYCoordinate() < 300);
+    }
+
+    @Test
+    public void unmappedAccessPointsLocateNowhere() {
+        KnnPositioningEngine engine = new KnnPositioningEngine();
+        engine.addFloor(new InMemoryFingerprintSet("Halligan", 1, "floor1.png"));
+
+        assertNull(engine.locate(new ArrayList<AccessPoint>()));
+    }
+}
@@ -0,0 +1,177 @@
+package com.tylerlubeck.maraudersmapmultiuser;
+
+import android.content.SharedPreferences;
+
+import com.tylerlubeck.maraudersmapmultiuser.Tasks.UploadBatchTask;
+
+import org.apache.http.HttpEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UploadQueueTest {
+    private static final String ENDPOINT = "http://example.com/api/v1/accesspoint/";
+
+    /* Only the reads the queue makes */
+    private static class FakePreferences implements SharedPreferences {
+        final HashMap<String, String> strings = new HashMap<String, String>();
+
+        @Override
+        public String getString(String key, String defValue) {
+            return this.strings.containsKey(key) ? this.strings.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return this.strings.containsKey(key);
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            return this.strings;
+        }
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return defValue;
+        }
+
+        @Override
+        public Editor edit() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {}
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {}
+    }
+
+    private static class Upload {
+        String endpoint;
+        String body;
+        String username;
+        String password;
+    }
+
+    private static class RecordingUploader implements UploadQueue.Uploader {
+        final ArrayList<Upload> uploads = new ArrayList<Upload>();
+
+        @Override
+        public void upload(String endpoint, HttpEntity batch, String username, String password,
+                           UploadBatchTask.Listener listener) {
+            Upload upload = new Upload();
+            upload.endpoint = endpoint;
+            upload.username = username;
+            upload.password = password;
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                batch.writeTo(bytes);
+                InputStream in = new ByteArrayInputStream(bytes.toByteArray());
+                if (batch.getContentEncoding() != null) {
+                    in = new GZIPInputStream(in);
+                }
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+                upload.body = body.toString("UTF-8");
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            this.uploads.add(upload);
+        }
+    }
+
+    private File file;
+    private FakePreferences preferences;
+    private RecordingUploader uploader;
+
+    @Before
+    public void setUp() throws IOException {
+        File directory = File.createTempFile("upload_queue", "");
+        directory.delete();
+        directory.mkdirs();
+        directory.deleteOnExit();
+        this.file = new File(directory, UploadQueue.QUEUE_FILE);
+        this.file.deleteOnExit();
+        this.preferences = new FakePreferences();
+        this.uploader = new RecordingUploader();
+    }
+
+    /* Lines left on disk by an earlier process */
+    private void writeLeftovers() throws IOException {
+        FileWriter writer = new FileWriter(this.file);
+        try {
+            writer.write("[{\"mac_address\":\"00:11:22:33:44:55\",\"signal_strength\":-70}]\n");
+            writer.write("[{\"mac_address\":\"00:11:22:33:44:66\",\"signal_strength\":-52}]\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void leftoversAreUploadedWithTheStoredCredentials() throws IOException {
+        this.writeLeftovers();
+        this.preferences.strings.put(UploadQueue.USERNAME_PREFERENCE, "tyler");
+        this.preferences.strings.put(UploadQueue.PASSWORD_PREFERENCE, "hunter2");
+        UploadQueue queue = new UploadQueue(this.file, ENDPOINT, this.preferences, null, this.uploader);
+
+        queue.flushNow();
+
+        assertEquals(1, this.uploader.uploads.size());
+        Upload upload = this.uploader.uploads.get(0);
+        assertEquals(ENDPOINT, upload.endpoint);
+        assertEquals("tyler", upload.username);
+        assertEquals("hunter2", upload.password);
+        assertTrue(upload.body, upload.body.contains("00:11:22:33:44:55"));
+        assertTrue(upload.body, upload.body.contains("00:11:22:33:44:66"));
+    }
+
+    @Test
+    public void leftoversWaitForCredentials() throws IOException {
+        this.writeLeftovers();
+        UploadQueue queue = new UploadQueue(this.file, ENDPOINT, this.preferences, null, this.uploader);
+
+        queue.flushNow();
+
+        assertTrue(this.uploader.uploads.isEmpty());
+    }
+}
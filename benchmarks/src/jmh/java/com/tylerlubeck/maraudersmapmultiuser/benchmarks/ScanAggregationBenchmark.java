@@ -0,0 +1,180 @@
+package com.tylerlubeck.maraudersmapmultiuser.benchmarks;
+
+import com.tylerlubeck.maraudersmapmultiuser.AccessPointAggregator;
+import com.tylerlubeck.maraudersmapmultiuser.MacAddresses;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregating a whole scanning session, the way AccessPointManager does it: every poll's
+ * results are folded in to the per-BSSID statistics, then averaged in to AccessPoints.
+ *
+ * The legacy benchmarks reproduce the original HashMap of String to ArrayList of readings, and
+ * the two-pass mean_value and standard_deviation, as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ScanAggregationBenchmark {
+    private static final String LOCATION_URI = "/api/v1/location/1/";
+
+    /* Synthetic scans only ever see some of the access points in any one poll */
+    private static final double VISIBILITY = 0.8;
+
+    @Param({"50", "200", "2000"})
+    int accessPoints;
+
+    @Param({"2", "10", "50"})
+    int polls;
+
+    /* The BSSID and level of every result in each poll, as a WifiManager would report them */
+    String[][] bssids;
+    int[][] levels;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String[] all_bssids = new String[this.accessPoints];
+        int[] base_levels = new int[this.accessPoints];
+        for (int i = 0; i < this.accessPoints; i++) {
+            all_bssids[i] = MacAddresses.format(random.nextLong() & 0xFFFFFFFFFFFFL);
+            base_levels[i] = -40 - random.nextInt(55);
+        }
+
+        this.bssids = new String[this.polls][];
+        this.levels = new int[this.polls][];
+        for (int poll = 0; poll < this.polls; poll++) {
+            ArrayList<Integer> seen = new ArrayList<Integer>();
+            for (int i = 0; i < this.accessPoints; i++) {
+                if (random.nextDouble() < VISIBILITY) {
+                    seen.add(i);
+                }
+            }
+            this.bssids[poll] = new String[seen.size()];
+            this.levels[poll] = new int[seen.size()];
+            for (int i = 0; i < seen.size(); i++) {
+                int access_point = seen.get(i);
+                /* Copy the string, since every scan hands back new ScanResult objects */
+                this.bssids[poll][i] = new String(all_bssids[access_point]);
+                this.levels[poll][i] = base_levels[access_point] + (int) Math.round(random.nextGaussian() * 4);
+            }
+        }
+    }
+
+    @Benchmark
+    public AccessPointAggregator aggregate() {
+        AccessPointAggregator aggregator = new AccessPointAggregator();
+        for (int poll = 0; poll < this.polls; poll++) {
+            String[] poll_bssids = this.bssids[poll];
+            int[] poll_levels = this.levels[poll];
+            for (int i = 0; i < poll_bssids.length; i++) {
+                long bssid = MacAddresses.pack(poll_bssids[i]);
+                if (bssid != MacAddresses.INVALID) {
+                    aggregator.add(bssid, poll_levels[i]);
+                }
+            }
+        }
+        return aggregator;
+    }
+
+    @Benchmark
+    public boolean aggregateUntilConverged() {
+        AccessPointAggregator aggregator = new AccessPointAggregator();
+        boolean converged = false;
+        for (int poll = 0; poll < this.polls; poll++) {
+            String[] poll_bssids = this.bssids[poll];
+            int[] poll_levels = this.levels[poll];
+            for (int i = 0; i < poll_bssids.length; i++) {
+                long bssid = MacAddresses.pack(poll_bssids[i]);
+                if (bssid != MacAddresses.INVALID) {
+                    aggregator.add(bssid, poll_levels[i]);
+                }
+            }
+            converged = aggregator.hasConverged(5, 1.0);
+        }
+        return converged;
+    }
+
+    @Benchmark
+    public ArrayList<AccessPoint> aggregateAndAverage() {
+        return this.aggregate().getAccessPoints(LOCATION_URI);
+    }
+
+    @Benchmark
+    public HashMap<String, ArrayList<Integer>> legacyAggregate() {
+        HashMap<String, ArrayList<Integer>> aggregator = new HashMap<String, ArrayList<Integer>>();
+        for (int poll = 0; poll < this.polls; poll++) {
+            String[] poll_bssids = this.bssids[poll];
+            int[] poll_levels = this.levels[poll];
+            for (int i = 0; i < poll_bssids.length; i++) {
+                ArrayList<Integer> strengths = aggregator.get(poll_bssids[i]);
+                if (strengths == null) {
+                    strengths = new ArrayList<Integer>();
+                    aggregator.put(poll_bssids[i], strengths);
+                }
+                strengths.add(poll_levels[i]);
+            }
+        }
+        return aggregator;
+    }
+
+    @Benchmark
+    public ArrayList<AccessPoint> legacyAggregateAndAverage() {
+        HashMap<String, ArrayList<Integer>> aggregator = this.legacyAggregate();
+        ArrayList<AccessPoint> accessPoints = new ArrayList<AccessPoint>();
+        for (Map.Entry<String, ArrayList<Integer>> entry : aggregator.entrySet()) {
+            ArrayList<Integer> strengths = entry.getValue();
+            double mean = legacyMeanValue(strengths);
+            double standard_deviation = legacyStandardDeviation(strengths, mean);
+            accessPoints.add(new AccessPoint(entry.getKey(), mean, standard_deviation, LOCATION_URI));
+        }
+        return accessPoints;
+    }
+
+    /* The original AccessPointManager.mean_value */
+    private static double legacyMeanValue(ArrayList<Integer> strengths) {
+        int strength_size = strengths.size();
+        double sum = 0;
+
+        if (strength_size == 0) {
+            return 0;
+        }
+
+        for (double strength : strengths) {
+            sum += strength;
+        }
+
+        return sum / (double) strength_size;
+    }
+
+    /* The original AccessPointManager.standard_deviation */
+    private static double legacyStandardDeviation(ArrayList<Integer> strengths, double mean) {
+        int strength_size = strengths.size();
+        double variance = 0;
+
+        if (strength_size <= 1) {
+            return 0;
+        }
+
+        for (int strength : strengths) {
+            variance += Math.pow(strength - mean, 2);
+        }
+
+        variance /= (strength_size - 1);
+        return Math.sqrt(variance);
+    }
+}
@@ -0,0 +1,68 @@
+package com.tylerlubeck.maraudersmapmultiuser.benchmarks;
+
+import com.google.gson.Gson;
+import com.tylerlubeck.maraudersmapmultiuser.Models.AccessPoint;
+import com.tylerlubeck.maraudersmapmultiuser.Models.LocateMeBody;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing averaged access points: toJSON is what mapping uploads use, and Gson is what
+ * Retrofit uses for the body of a locate request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SerializationBenchmark {
+    private static final String LOCATION_URI = "/api/v1/location/1/";
+
+    @Param({"50", "200", "2000"})
+    int accessPoints;
+
+    ArrayList<AccessPoint> averaged;
+    LocateMeBody body;
+    Gson gson;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        this.averaged = new ArrayList<AccessPoint>(this.accessPoints);
+        for (int i = 0; i < this.accessPoints; i++) {
+            long bssid = random.nextLong() & 0xFFFFFFFFFFFFL;
+            this.averaged.add(new AccessPoint(bssid,
+                                              -40 - random.nextDouble() * 55,
+                                              random.nextDouble() * 6,
+                                              1 + random.nextInt(50),
+                                              LOCATION_URI));
+        }
+        this.body = new LocateMeBody(this.averaged);
+        this.gson = new Gson();
+    }
+
+    @Benchmark
+    public String toJSON() throws JSONException {
+        JSONArray uploadable = new JSONArray();
+        for (AccessPoint accessPoint : this.averaged) {
+            uploadable.put(accessPoint.toJSON());
+        }
+        return uploadable.toString();
+    }
+
+    @Benchmark
+    public String gsonLocateMeBody() {
+        return this.gson.toJson(this.body);
+    }
+}